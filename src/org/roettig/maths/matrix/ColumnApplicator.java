@@ -11,6 +11,7 @@ import Jama.Matrix;
 public class ColumnApplicator
 {
 	private ElementFunctor f_;
+	private UnaryFunctor   u_;
 	
 	/**
 	 * 
@@ -19,6 +20,8 @@ public class ColumnApplicator
 	public ColumnApplicator(ElementFunctor f)
 	{
 		f_ = f;
+		if(f instanceof UnaryFunctor)
+			u_ = (UnaryFunctor) f;
 	}
 
 	/**
@@ -29,6 +32,85 @@ public class ColumnApplicator
 	 */
 	public void apply(Matrix M, int c)
 	{
+		applyColumn(M, c, 0, M.getRowDimension());
+	}
+	
+	/**
+	 * applies the ElementFunctor to all columns of matrix M.
+	 * 
+	 * @param M : target matrix
+	 */
+	public void apply(Matrix M)
+	{
+		int R = M.getRowDimension();
+		int C = M.getColumnDimension();
+		
+		if(u_!=null)
+		{
+			// index-free functors do not care about the visiting order
+			applyRows(M, 0, R);
+			return;
+		}
+		for(int c=0;c<C;c++)
+		{
+			applyColumn(M, c, 0, R);
+		}
+	}
+
+	/**
+	 * applies the ElementFunctor to rows r0..r1-1 of c-th column of matrix M.
+	 * 
+	 * @param M : target matrix
+	 * @param c : target column
+	 * @param r0 : first row (inclusive)
+	 * @param r1 : last row (exclusive)
+	 */
+	protected void applyColumn(Matrix M, int c, int r0, int r1)
+	{
+		double[][] A = M.getArray();
+		for(int r=r0;r<r1;r++)
+		{
+			A[r][c] = f_.calculate(r, c, A[r][c] );
+		}
+	}
+
+	/**
+	 * applies the ElementFunctor to all columns within rows r0..r1-1 of matrix M.
+	 * 
+	 * @param M : target matrix
+	 * @param r0 : first row (inclusive)
+	 * @param r1 : last row (exclusive)
+	 */
+	protected void applyRows(Matrix M, int r0, int r1)
+	{
+		double[][] A = M.getArray();
+		int        C = M.getColumnDimension();
+		
+		for(int r=r0;r<r1;r++)
+		{
+			double[] row = A[r];
+			if(u_!=null)
+			{
+				u_.apply(row, 0, C);
+				continue;
+			}
+			for(int c=0;c<C;c++)
+			{
+				row[c] = f_.calculate(r, c, row[c] );
+			}
+		}
+	}
+
+	/**
+	 * applies the ElementFunctor to c-th column of a row-wise stored matrix M.
+	 * 
+	 * @param M : target matrix (not a PackedDistanceMatrix, whose columns cannot be changed alone)
+	 * @param c : target column
+	 */
+	public void apply(RowMatrix M, int c)
+	{
+		if(M instanceof PackedDistanceMatrix)
+			throw new IllegalArgumentException("a single column of a PackedDistanceMatrix cannot be transformed");
 		int R = M.getRowDimension();
 		 
 		for(int r=0;r<R;r++)
@@ -37,24 +119,44 @@ public class ColumnApplicator
 			M.set(r,c,d);
 		}
 	}
-	
+
 	/**
-	 * applies the ElementFunctor to all columns of matrix M.
+	 * applies the ElementFunctor to all columns of a row-wise stored matrix M.
+	 * 
+	 * On a PackedDistanceMatrix the ElementFunctor is applied to the upper triangle only (see there).
 	 * 
 	 * @param M : target matrix
 	 */
-	public void apply(Matrix M)
+	public void apply(RowMatrix M)
 	{
-		int R = M.getRowDimension();
+		applyRows(M, 0, M.getRowDimension());
+	}
+
+	/**
+	 * applies the ElementFunctor to all columns within rows r0..r1-1 of a row-wise stored matrix M.
+	 * 
+	 * @param M : target matrix
+	 * @param r0 : first row (inclusive)
+	 * @param r1 : last row (exclusive)
+	 */
+	protected void applyRows(RowMatrix M, int r0, int r1)
+	{
+		if(M instanceof PackedDistanceMatrix)
+		{
+			((PackedDistanceMatrix) M).applyUpper(f_, r0, r1);
+			return;
+		}
 		int C = M.getColumnDimension();
+		double[] row = new double[C];
 		
-		for(int c=0;c<C;c++)
+		for(int r=r0;r<r1;r++)
 		{
-			for(int r=0;r<R;r++)
+			M.getRow(r, row);
+			for(int c=0;c<C;c++)
 			{
-				double d = f_.calculate(r, c, M.get(r, c) );
-				M.set(r,c,d);
+				row[c] = f_.calculate(r, c, row[c] );
 			}
+			M.setRow(r, row);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -1,22 +1,22 @@
 package org.roettig.maths.matrix;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import org.roettig.maths.util.DoubleView;
+
 import Jama.Matrix;
 
 /**
- * ColumnIterator implements Iterable&lt;Double&gt;-interface for matrix columns.
+ * ColumnIterator is a DoubleView (and thus Iterable&lt;Double&gt;) on a matrix column.
  * 
+ * Elements are read in place from the backing array of the matrix.
  * 
  * @author roettig
  *
  */
-public class ColumnIterator implements Iterable<Double>
+public class ColumnIterator extends DoubleView
 {
-	private Matrix M_;
+	private double[][] A_;
+	private int R_;
 	private int c_;
-
-	private ArrayList<Double> col;
 	
 	/**
 	 * 
@@ -25,23 +25,26 @@ public class ColumnIterator implements Iterable<Double>
 	 */
 	public ColumnIterator(Matrix M, int c)
 	{
-		M_ = M;
+		A_ = M.getArray();
+		R_ = M.getRowDimension();
 		c_ = c;
 	}
 
 	/**
-	 * yields Double-iterator over column elements. 
+	 * get number of rows.
+	 */
+	@Override
+	public int size()
+	{
+		return R_;
+	}
+
+	/**
+	 * get element of k-th row.
 	 */
 	@Override
-	public Iterator<Double> iterator()
+	public double get(int k)
 	{
-		int R = M_.getRowDimension();
-		col = new ArrayList<Double>();
-		
-		for(int r=0;r<R;r++)
-		{
-			col.add( M_.get(r, c_));
-		}
-		return col.iterator();
+		return A_[k][c_];
 	}
 }
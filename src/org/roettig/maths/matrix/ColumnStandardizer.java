@@ -0,0 +1,210 @@
+package org.roettig.maths.matrix;
+
+import org.roettig.maths.util.Parallel;
+
+import Jama.Matrix;
+
+/**
+ * ColumnStandardizer centers matrix columns to zero mean and (optionally) scales them to a
+ * standard deviation of 1.
+ *
+ * <pre>
+ * {@code
+ * ColumnStandardizer st = new ColumnStandardizer(true);
+ * st.fit(X);
+ * st.apply(X);     // standardize training data in place
+ * st.apply(Xnew);  // same transform for new data
+ * }
+ * </pre>
+ *
+ * Column means and variances are computed in one row-major sweep (parallel over row blocks,
+ * whose single-pass accumulators are merged), centering and scaling are fused into a second sweep.
+ *
+ * @author roettig
+ *
+ */
+public class ColumnStandardizer
+{
+	private static final int MIN_ROWS = 256;
+
+	private boolean  scale;
+	private double[] means;
+	private double[] scales;
+
+	/**
+	 *
+	 * @param scale : scale columns to standard deviation of 1 (otherwise only center)
+	 */
+	public ColumnStandardizer(boolean scale)
+	{
+		this.scale = scale;
+	}
+
+	/**
+	 * creates standardizer from previously fitted parameters.
+	 *
+	 * @param means : column means
+	 * @param scales : column scales (standard deviations), null for centering only
+	 */
+	public ColumnStandardizer(double[] means, double[] scales)
+	{
+		this.scale  = (scales!=null);
+		this.means  = means.clone();
+		this.scales = scales!=null ? scales.clone() : MatrixHelper.ones(means.length);
+	}
+
+	/**
+	 * computes column means and standard deviations of M.
+	 *
+	 * @param M : matrix
+	 *
+	 * @return this
+	 */
+	public ColumnStandardizer fit(Matrix M)
+	{
+		final double[][] A = M.getArray();
+		final int        R = M.getRowDimension();
+		final int        C = M.getColumnDimension();
+		final int        B = Parallel.grain(R, MIN_ROWS);
+		final int        nblocks = Math.max(1, (R+B-1)/B);
+
+		final double[][] bmean = new double[nblocks][];
+		final double[][] bm2   = new double[nblocks][];
+		Parallel.forRange(0, nblocks, 1, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int b=from;b<to;b++)
+				{
+					double[] mean = new double[C];
+					double[] m2   = new double[C];
+					int      r1   = Math.min(R, (b+1)*B);
+					int      n    = 0;
+					for(int r=b*B;r<r1;r++)
+					{
+						double[] row = A[r];
+						double   w   = 1.0/(++n);
+						for(int c=0;c<C;c++)
+						{
+							double d = row[c]-mean[c];
+							mean[c] += d*w;
+							m2[c]   += d*(row[c]-mean[c]);
+						}
+					}
+					bmean[b] = mean;
+					bm2[b]   = m2;
+				}
+			}
+		});
+
+		// merge block accumulators
+		means  = bmean[0];
+		double[] m2 = bm2[0];
+		long n = Math.min(R, B);
+		for(int b=1;b<nblocks;b++)
+		{
+			long   nb = Math.min(R, (long) (b+1)*B)-(long) b*B;
+			long   N  = n+nb;
+			double f  = (double) n*nb/N;
+			for(int c=0;c<C;c++)
+			{
+				double d = bmean[b][c]-means[c];
+				means[c] += d*nb/N;
+				m2[c]    += bm2[b][c]+d*d*f;
+			}
+			n = N;
+		}
+
+		scales = MatrixHelper.ones(C);
+		if(scale)
+		{
+			for(int c=0;c<C;c++)
+			{
+				double s = Math.sqrt(m2[c]/(n-1));
+				if(s>0)
+					scales[c] = s;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * centers (and scales) the columns of M in place with the fitted parameters.
+	 *
+	 * @param M : matrix with as many columns as the fitted one
+	 */
+	public void apply(Matrix M)
+	{
+		if(means==null)
+			throw new IllegalStateException("standardizer has not been fitted");
+		final double[][] A = M.getArray();
+		final int        R = M.getRowDimension();
+		final int        C = M.getColumnDimension();
+		if(C!=means.length)
+			throw new IllegalArgumentException("matrix has "+C+" columns, standardizer was fitted on "+means.length);
+
+		final double[] mn  = means;
+		final double[] inv = new double[C];
+		for(int c=0;c<C;c++)
+			inv[c] = 1.0/scales[c];
+
+		Parallel.forRange(0, R, Parallel.grain(R, MIN_ROWS), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int r=from;r<to;r++)
+				{
+					double[] row = A[r];
+					for(int c=0;c<C;c++)
+						row[c] = (row[c]-mn[c])*inv[c];
+				}
+			}
+		});
+	}
+
+	/**
+	 * yields a standardized copy of M (M is left untouched).
+	 *
+	 * @param M : matrix
+	 *
+	 * @return standardized copy
+	 */
+	public MMatrix transform(Matrix M)
+	{
+		MMatrix ret = new MMatrix(M);
+		apply(ret);
+		return ret;
+	}
+
+	/**
+	 * get fitted column means.
+	 *
+	 * @return copy of column means
+	 */
+	public double[] getMeans()
+	{
+		return means.clone();
+	}
+
+	/**
+	 * get fitted column scales (standard deviations, 1 for constant columns or if not scaling).
+	 *
+	 * @return copy of column scales
+	 */
+	public double[] getScales()
+	{
+		return scales.clone();
+	}
+
+	/**
+	 * does the standardizer scale columns ?
+	 *
+	 * @return true if scaling
+	 */
+	public boolean isScaling()
+	{
+		return scale;
+	}
+}
@@ -0,0 +1,224 @@
+package org.roettig.maths.matrix;
+
+import org.roettig.maths.util.Parallel;
+
+import Jama.Matrix;
+
+/**
+ * CrossProducts computes the symmetric products X'*X and X*X' of a matrix.
+ *
+ * <pre>
+ * {@code
+ * Matrix C = CrossProducts.transposeTimes(X);  // p x p
+ * Matrix G = CrossProducts.timesTranspose(X);  // N x N
+ * }
+ * </pre>
+ *
+ * Only the tiles on and above the diagonal of the result are computed, each by one task, and
+ * mirrored afterwards. When there are fewer tiles than worker threads (a small result, e.g. the
+ * p x p cross-product of a tall matrix) the summation index is split into chunks as well, which
+ * accumulate into private partial results that are added up at the end.
+ *
+ * @author roettig
+ *
+ */
+public class CrossProducts
+{
+	/**
+	 * edge length of the result tiles.
+	 */
+	private static final int TILE   = 64;
+
+	/**
+	 * #columns summed per pass over a tile of X*X'.
+	 */
+	private static final int KBLOCK = 256;
+
+	/**
+	 * computes X'*X.
+	 *
+	 * @param X : N x p matrix
+	 * @return p x p matrix
+	 */
+	public static Matrix transposeTimes(Matrix X)
+	{
+		return compute(X.getArray(), X.getRowDimension(), X.getColumnDimension(), true);
+	}
+
+	/**
+	 * computes X*X'.
+	 *
+	 * @param X : N x p matrix
+	 * @return N x N matrix
+	 */
+	public static Matrix timesTranspose(Matrix X)
+	{
+		return compute(X.getArray(), X.getRowDimension(), X.getColumnDimension(), false);
+	}
+
+	/**
+	 * adds X(r0:r1,:)'*X(r0:r1,:) to C on the calling thread, for callers that already run in
+	 * parallel (e.g. over row blocks of a matrix that does not fit into memory).
+	 *
+	 * Only the elements on and above the diagonal of C are meaningful afterwards.
+	 *
+	 * @param x : rows of X
+	 * @param r0 : first row (inclusive)
+	 * @param r1 : last row (exclusive)
+	 * @param C : p x p accumulator
+	 */
+	public static void addTransposeTimes(double[][] x, int r0, int r1, double[][] C)
+	{
+		int p = C.length;
+		for(int i0=0;i0<p;i0+=TILE)
+			for(int j0=i0;j0<p;j0+=TILE)
+				columnTile(x, C, i0, Math.min(p, i0+TILE), j0, Math.min(p, j0+TILE), r0, r1);
+	}
+
+	/**
+	 * @param x : backing array of X
+	 * @param N : #rows of X
+	 * @param p : #columns of X
+	 * @param trans : X'*X if true, X*X' otherwise
+	 */
+	private static Matrix compute(final double[][] x, int N, int p, final boolean trans)
+	{
+		final int n  = trans ? p : N;
+		final int K  = trans ? N : p;
+		final int nt = (n+TILE-1)/TILE;
+
+		// enumerate tiles (bi,bj) with bj>=bi
+		final int   npairs = nt*(nt+1)/2;
+		final int[] pi     = new int[npairs];
+		final int[] pj     = new int[npairs];
+		for(int bi=0,t=0;bi<nt;bi++)
+			for(int bj=bi;bj<nt;bj++,t++)
+			{
+				pi[t] = bi;
+				pj[t] = bj;
+			}
+
+		// split the summation index if there are too few tiles to keep all workers busy
+		int want = 4*Parallel.getParallelism();
+		final int chunks = npairs>=want ? 1 : Math.max(1, Math.min((want+npairs-1)/npairs, K/(trans ? TILE : KBLOCK)));
+		final int csize  = (K+chunks-1)/chunks;
+
+		final double[][][] C = new double[chunks][][];
+		for(int c=0;c<chunks;c++)
+			C[c] = new double[n][n];
+
+		int ntasks = npairs*chunks;
+		Parallel.forRange(0, ntasks, Parallel.grain(ntasks, 1), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int t=from;t<to;t++)
+				{
+					int pair = t%npairs;
+					int c    = t/npairs;
+					int i0   = pi[pair]*TILE;
+					int j0   = pj[pair]*TILE;
+					int i1   = Math.min(n, i0+TILE);
+					int j1   = Math.min(n, j0+TILE);
+					int k0   = c*csize;
+					int k1   = Math.min(K, k0+csize);
+					if(trans)
+						columnTile(x, C[c], i0, i1, j0, j1, k0, k1);
+					else
+						rowTile(x, C[c], i0, i1, j0, j1, k0, k1);
+				}
+			}
+		});
+
+		// add up partial results and mirror the upper triangle
+		final double[][] R = C[0];
+		Parallel.forRange(0, n, Parallel.grain(n, 16), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int i=from;i<to;i++)
+				{
+					double[] ri = R[i];
+					for(int c=1;c<chunks;c++)
+					{
+						double[] ci = C[c][i];
+						for(int j=i;j<n;j++)
+							ri[j] += ci[j];
+					}
+				}
+			}
+		});
+		for(int i=0;i<n;i++)
+			for(int j=i+1;j<n;j++)
+				R[j][i] = R[i][j];
+		return new Matrix(R, n, n);
+	}
+
+	/**
+	 * accumulates rows k0..k1 of X into tile (i0..i1,j0..j1) of X'*X.
+	 */
+	private static void columnTile(double[][] x, double[][] C, int i0, int i1, int j0, int j1, int k0, int k1)
+	{
+		for(int k=k0;k<k1;k++)
+		{
+			double[] xk = x[k];
+			for(int i=i0;i<i1;i++)
+			{
+				double a = xk[i];
+				if(a==0.0)
+					continue;
+				double[] ci = C[i];
+				for(int j=j0;j<j1;j++)
+					ci[j] += a*xk[j];
+			}
+		}
+	}
+
+	/**
+	 * accumulates columns k0..k1 of X into tile (i0..i1,j0..j1) of X*X'.
+	 */
+	private static void rowTile(double[][] x, double[][] C, int i0, int i1, int j0, int j1, int k0, int k1)
+	{
+		for(int kb=k0;kb<k1;kb+=KBLOCK)
+		{
+			int ke = Math.min(k1, kb+KBLOCK);
+			for(int i=i0;i<i1;i++)
+			{
+				double[] xi = x[i];
+				double[] ci = C[i];
+				int      j  = Math.max(j0, i);
+				// four dot products at once to keep several independent accumulators busy
+				for(;j+3<j1;j+=4)
+				{
+					double[] a0 = x[j];
+					double[] a1 = x[j+1];
+					double[] a2 = x[j+2];
+					double[] a3 = x[j+3];
+					double   s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+					for(int k=kb;k<ke;k++)
+					{
+						double v = xi[k];
+						s0 += v*a0[k];
+						s1 += v*a1[k];
+						s2 += v*a2[k];
+						s3 += v*a3[k];
+					}
+					ci[j]   += s0;
+					ci[j+1] += s1;
+					ci[j+2] += s2;
+					ci[j+3] += s3;
+				}
+				for(;j<j1;j++)
+				{
+					double[] a = x[j];
+					double   s = 0.0;
+					for(int k=kb;k<ke;k++)
+						s += xi[k]*a[k];
+					ci[j] += s;
+				}
+			}
+		}
+	}
+}
@@ -29,6 +29,26 @@ public class DiagonalApplicator
 	 * 
 	 */
 	public void apply(Matrix M)
+	{
+		int R = M.getRowDimension();
+		int C = M.getColumnDimension();
+		int mn = Math.min(R,C);
+		double[][] A = M.getArray();
+
+		for(int c=0;c<mn;c++)
+		{
+			A[c][c] = f.calculate( c, c, A[c][c] );
+		}
+
+	}
+
+	/**
+	 * applies ElementFunctor to all diagonal elements of a row-wise stored matrix.
+	 * 
+	 * @param M : target matrix
+	 * 
+	 */
+	public void apply(RowMatrix M)
 	{
 		int R = M.getRowDimension();
 		int C = M.getColumnDimension();
@@ -39,6 +59,5 @@ public class DiagonalApplicator
 			double d = f.calculate( c, c, M.get(c, c) );
 			M.set(c,c,d);
 		}
-
 	}
-}
\ No newline at end of file
+}
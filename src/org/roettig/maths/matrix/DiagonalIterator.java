@@ -1,20 +1,19 @@
 package org.roettig.maths.matrix;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import org.roettig.maths.util.DoubleView;
+
 import Jama.Matrix;
 
 /**
- * DiagonalIterator implements Iterable&lt;Double&gt;-interface for all diagonal matrix elements.
+ * DiagonalIterator is a DoubleView (and thus Iterable&lt;Double&gt;) on all diagonal matrix elements.
  * 
  * @author roettig
  *
  */
-public class DiagonalIterator implements Iterable<Double>
+public class DiagonalIterator extends DoubleView
 {
-	private Matrix M;
-
-	private ArrayList<Double> diag;
+	private double[][] A;
+	private int K;
 
 	/**
 	 * 
@@ -22,25 +21,25 @@ public class DiagonalIterator implements Iterable<Double>
 	 */
 	public DiagonalIterator(Matrix M)
 	{
-		this.M = M;
+		this.A = M.getArray();
+		this.K = Math.min(M.getRowDimension(), M.getColumnDimension());
 	}
 
 	/**
-	 * yields Double-iterator over diagonal elements of matrix.
-	 * 
+	 * get number of diagonal elements.
 	 */
 	@Override
-	public Iterator<Double> iterator()
+	public int size()
 	{
-		int C = M.getColumnDimension();
-		int R = M.getRowDimension();
-		int K = Math.min(R,C);
-		diag = new ArrayList<Double>(); 
-		for(int c=0;c<K;c++)
-		{
-			diag.add( M.get(c, c));
-		}
-		return diag.iterator();
+		return K;
 	}
 
+	/**
+	 * get k-th diagonal element.
+	 */
+	@Override
+	public double get(int k)
+	{
+		return A[k][k];
+	}
 }
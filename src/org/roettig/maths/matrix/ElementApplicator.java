@@ -4,6 +4,9 @@ import Jama.Matrix;
 
 /**
  * ElementApplicator applies a functor to any matrix element.
+ * 
+ * UnaryFunctors and RowFunctors are handed whole rows of the backing array, plain
+ * ElementFunctors are called per element on the backing array.
  *  
  * @author roettig
  *
@@ -11,6 +14,8 @@ import Jama.Matrix;
 public class ElementApplicator
 {
 	private ElementFunctor f;
+	private UnaryFunctor   u;
+	private RowFunctor     rf;
 	
 	/**
 	 * 
@@ -19,6 +24,17 @@ public class ElementApplicator
 	public ElementApplicator( ElementFunctor f)
 	{
 		this.f = f;
+		if(f instanceof UnaryFunctor)
+			this.u = (UnaryFunctor) f;
+	}
+
+	/**
+	 * 
+	 * @param f : RowFunctor
+	 */
+	public ElementApplicator( RowFunctor f)
+	{
+		this.rf = f;
 	}
 
 	/**
@@ -28,16 +44,91 @@ public class ElementApplicator
 	 */
 	public void apply(Matrix M)
 	{
-		int R = M.getRowDimension();
+		applyRows(M, 0, M.getRowDimension());
+	}
+
+	/**
+	 * applies ElementFunctor f to any element of rows r0..r1-1.
+	 * 
+	 * @param M : target matrix
+	 * @param r0 : first row (inclusive)
+	 * @param r1 : last row (exclusive)
+	 */
+	protected void applyRows(Matrix M, int r0, int r1)
+	{
+		double[][] A = M.getArray();
+		int        C = M.getColumnDimension();
+		
+		if(u!=null)
+		{
+			for(int r=r0;r<r1;r++)
+				u.apply(A[r], 0, C);
+		}
+		else if(rf!=null)
+		{
+			for(int r=r0;r<r1;r++)
+				rf.calculate(r, A[r]);
+		}
+		else
+		{
+			for(int r=r0;r<r1;r++)
+			{
+				double[] row = A[r];
+				for(int c=0;c<C;c++)
+				{
+					row[c] = f.calculate( r, c, row[c] );
+				}
+			}
+		}
+	}
+
+	/**
+	 * applies ElementFunctor f to any matrix element of a row-wise stored matrix.
+	 * 
+	 * On a PackedDistanceMatrix f is applied to the upper triangle only (see there).
+	 * 
+	 * @param M : target matrix
+	 */
+	public void apply(RowMatrix M)
+	{
+		applyRows(M, 0, M.getRowDimension());
+	}
+
+	/**
+	 * applies ElementFunctor f to any element of rows r0..r1-1 of a row-wise stored matrix.
+	 * 
+	 * @param M : target matrix
+	 * @param r0 : first row (inclusive)
+	 * @param r1 : last row (exclusive)
+	 */
+	protected void applyRows(RowMatrix M, int r0, int r1)
+	{
+		if(M instanceof PackedDistanceMatrix)
+		{
+			// only the upper triangle is stored, mirrored elements must not be read from other rows
+			if(rf!=null)
+				throw new IllegalArgumentException("RowFunctors cannot be applied to a PackedDistanceMatrix");
+			((PackedDistanceMatrix) M).applyUpper(f, r0, r1);
+			return;
+		}
 		int C = M.getColumnDimension();
+		double[] row = new double[C];
 		
-		for(int r=0;r<R;r++)
+		for(int r=r0;r<r1;r++)
 		{
-			for(int c=0;c<C;c++)
+			M.getRow(r, row);
+			if(u!=null)
+				u.apply(row, 0, C);
+			else if(rf!=null)
+				rf.calculate(r, row);
+			else
 			{
-				double d = f.calculate( r, c, M.get(r, c) );
-				M.set(r,c,d);
+				for(int c=0;c<C;c++)
+				{
+					row[c] = f.calculate( r, c, row[c] );
+				}
 			}
+			M.setRow(r, row);
 		}
 	}
 }
@@ -1,20 +1,23 @@
 package org.roettig.maths.matrix;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import org.roettig.maths.util.DoubleView;
+
 import Jama.Matrix;
 
 /**
- * ElementIterator implements Iterable&lt;Double&gt;-interface for all matrix elements.
+ * ElementIterator is a DoubleView (and thus Iterable&lt;Double&gt;) on all matrix elements in row-major order.
  * 
  * @author roettig
  *
  */
-public class ElementIterator implements Iterable<Double>
+public class ElementIterator extends DoubleView
 {
-	private Matrix M;
-
-	private ArrayList<Double> col;
+	private double[][] A;
+	private int R;
+	private int C;
 	
 	/**
 	 * 
@@ -23,28 +26,59 @@ public class ElementIterator implements Iterable<Double>
 	 */
 	public ElementIterator(Matrix M)
 	{
-		this.M = M;
+		this.A = M.getArray();
+		this.R = M.getRowDimension();
+		this.C = M.getColumnDimension();
+	}
+
+	/**
+	 * get number of matrix elements.
+	 */
+	@Override
+	public int size()
+	{
+		return R*C;
 	}
 
 	/**
-	 * yields an Double-iterator over all matrix elements.
+	 * get k-th element in row-major order.
 	 */
 	@Override
-	public Iterator<Double> iterator()
+	public double get(int k)
 	{
-		int R = M.getRowDimension();
-		int C = M.getColumnDimension();
-		
-		col = new ArrayList<Double>(); 
-		
-		for(int r=0;r<R;r++)
+		return A[k/C][k%C];
+	}
+
+	/**
+	 * yields a primitive iterator over all matrix elements (row by row, without index division).
+	 */
+	@Override
+	public PrimitiveIterator.OfDouble iterator()
+	{
+		return new PrimitiveIterator.OfDouble()
 		{
-			for(int c=0;c<C;c++)
+			private int r = 0;
+			private int c = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return r<R && C>0;
+			}
+
+			@Override
+			public double nextDouble()
 			{
-				col.add( M.get(r, c));
+				if(!hasNext())
+					throw new NoSuchElementException();
+				double d = A[r][c];
+				if(++c==C)
+				{
+					c = 0;
+					r++;
+				}
+				return d;
 			}
-		}
-		
-		return col.iterator();
+		};
 	}
-}
\ No newline at end of file
+}
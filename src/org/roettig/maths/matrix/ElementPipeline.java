@@ -0,0 +1,265 @@
+package org.roettig.maths.matrix;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.roettig.maths.util.Parallel;
+
+import Jama.Matrix;
+
+/**
+ * ElementPipeline records a chain of element operations and runs them in one fused pass.
+ *
+ * <pre>
+ * {@code
+ * MMatrix Y = X.map(f).map(g).scale(0.5).toMatrix();   // new matrix
+ * X.map(Functors.SQRT).parallel().applyInPlace();      // overwrite X
+ * }
+ * </pre>
+ *
+ * Nothing is computed until the pipeline is materialized. Rows are then processed in segments
+ * that fit into the L1 cache and every stage runs over a segment before the next one is loaded,
+ * so each element is read and written once regardless of the length of the chain.
+ *
+ * Pipelines are immutable, every operation returns a new pipeline. A pipeline created without
+ * source matrix can only be run on rows supplied by the caller (see applyRow).
+ *
+ * @author roettig
+ *
+ */
+public class ElementPipeline
+{
+	/**
+	 * number of elements of a row processed by all stages at once.
+	 */
+	private static final int SEGMENT = 1<<10;
+
+	private Matrix           src;
+	private ElementFunctor[] stages;
+	private Executor         exec;
+
+	/**
+	 * creates an empty pipeline without source matrix.
+	 */
+	public ElementPipeline()
+	{
+		this(null);
+	}
+
+	/**
+	 * creates an empty pipeline over src.
+	 *
+	 * @param src : source matrix
+	 */
+	public ElementPipeline(Matrix src)
+	{
+		this.src    = src;
+		this.stages = new ElementFunctor[0];
+	}
+
+	private ElementPipeline(ElementPipeline p, ElementFunctor f, Executor exec)
+	{
+		this.src    = p.src;
+		this.exec   = exec;
+		this.stages = p.stages;
+		if(f!=null)
+		{
+			this.stages = Arrays.copyOf(p.stages, p.stages.length+1);
+			this.stages[p.stages.length] = f;
+		}
+	}
+
+	/**
+	 * appends an element operation.
+	 *
+	 * @param f : functor (UnaryFunctors run their bulk loop)
+	 *
+	 * @return extended pipeline
+	 */
+	public ElementPipeline map(ElementFunctor f)
+	{
+		return new ElementPipeline(this, f, exec);
+	}
+
+	/**
+	 * appends multiplication by a constant.
+	 *
+	 * @param s : factor
+	 *
+	 * @return extended pipeline
+	 */
+	public ElementPipeline scale(double s)
+	{
+		return map(Functors.scale(s));
+	}
+
+	/**
+	 * appends addition of a constant.
+	 *
+	 * @param s : summand
+	 *
+	 * @return extended pipeline
+	 */
+	public ElementPipeline shift(double s)
+	{
+		return map(Functors.shift(s));
+	}
+
+	/**
+	 * appends squaring.
+	 *
+	 * @return extended pipeline
+	 */
+	public ElementPipeline square()
+	{
+		return map(Functors.SQUARE);
+	}
+
+	/**
+	 * appends taking square roots.
+	 *
+	 * @return extended pipeline
+	 */
+	public ElementPipeline sqrt()
+	{
+		return map(Functors.SQRT);
+	}
+
+	/**
+	 * materializes in parallel row tiles on the common ForkJoinPool (functors must be thread-safe).
+	 *
+	 * @return parallel pipeline
+	 */
+	public ElementPipeline parallel()
+	{
+		return parallel(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * materializes in parallel row tiles on exec (functors must be thread-safe).
+	 *
+	 * @param exec : executor running the row tiles
+	 *
+	 * @return parallel pipeline
+	 */
+	public ElementPipeline parallel(Executor exec)
+	{
+		return new ElementPipeline(this, null, exec);
+	}
+
+	/**
+	 * get number of recorded operations.
+	 *
+	 * @return #operations
+	 */
+	public int size()
+	{
+		return stages.length;
+	}
+
+	/**
+	 * runs all operations on the elements from..to-1 of a row.
+	 *
+	 * Producers of matrices call this on each freshly computed row to fuse the
+	 * operations into their own pass.
+	 *
+	 * @param r : row index
+	 * @param row : row elements (modified in place)
+	 * @param from : first column (inclusive)
+	 * @param to : last column (exclusive)
+	 */
+	public void applyRow(int r, double[] row, int from, int to)
+	{
+		for(int c0=from;c0<to;c0+=SEGMENT)
+			applySegment(r, row, c0, Math.min(to, c0+SEGMENT));
+	}
+
+	private void applySegment(int r, double[] row, int c0, int c1)
+	{
+		for(ElementFunctor f: stages)
+		{
+			if(f instanceof UnaryFunctor)
+			{
+				((UnaryFunctor) f).apply(row, c0, c1);
+				continue;
+			}
+			for(int c=c0;c<c1;c++)
+				row[c] = f.calculate(r, c, row[c]);
+		}
+	}
+
+	/**
+	 * materializes the pipeline into a new matrix (the source is left untouched).
+	 *
+	 * @return result
+	 */
+	public MMatrix toMatrix()
+	{
+		Matrix  S   = source();
+		MMatrix ret = new MMatrix(S.getRowDimension(), S.getColumnDimension());
+		run(S, ret);
+		return ret;
+	}
+
+	/**
+	 * materializes the pipeline into dst.
+	 *
+	 * @param dst : target matrix with the dimensions of the source (may be the source itself)
+	 */
+	public void into(Matrix dst)
+	{
+		Matrix S = source();
+		if(dst.getRowDimension()!=S.getRowDimension() || dst.getColumnDimension()!=S.getColumnDimension())
+			throw new IllegalArgumentException("Matrix dimensions must agree.");
+		run(S, dst);
+	}
+
+	/**
+	 * materializes the pipeline by overwriting the source matrix.
+	 *
+	 * @return source matrix
+	 */
+	public Matrix applyInPlace()
+	{
+		Matrix S = source();
+		run(S, S);
+		return S;
+	}
+
+	private Matrix source()
+	{
+		if(src==null)
+			throw new IllegalStateException("pipeline has no source matrix");
+		return src;
+	}
+
+	private void run(Matrix S, Matrix D)
+	{
+		final double[][] A = S.getArray();
+		final double[][] B = D.getArray();
+		final int        R = S.getRowDimension();
+		final int        C = S.getColumnDimension();
+		Parallel.Range body = new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int r=from;r<to;r++)
+				{
+					for(int c0=0;c0<C;c0+=SEGMENT)
+					{
+						int c1 = Math.min(C, c0+SEGMENT);
+						if(A!=B)
+							System.arraycopy(A[r], c0, B[r], c0, c1-c0);
+						applySegment(r, B[r], c0, c1);
+					}
+				}
+			}
+		};
+		if(exec==null || (long) R*C<ParallelElementApplicator.THRESHOLD)
+			body.apply(0, R);
+		else
+			Parallel.forRange(exec, 0, R, ParallelElementApplicator.rowGrain(R, C), body);
+	}
+}
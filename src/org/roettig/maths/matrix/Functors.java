@@ -0,0 +1,119 @@
+package org.roettig.maths.matrix;
+
+/**
+ * Functors provides common UnaryFunctors with specialized bulk loops.
+ * 
+ * @author roettig
+ *
+ */
+public class Functors
+{
+	/**
+	 * squares elements.
+	 */
+	public static final UnaryFunctor SQUARE = new UnaryFunctor()
+	{
+		@Override
+		public double applyAsDouble(double d)
+		{
+			return d*d;
+		}
+
+		@Override
+		public void apply(double[] a, int from, int to)
+		{
+			for(int k=from;k<to;k++)
+				a[k] = a[k]*a[k];
+		}
+	};
+
+	/**
+	 * takes square roots of elements.
+	 */
+	public static final UnaryFunctor SQRT = new UnaryFunctor()
+	{
+		@Override
+		public double applyAsDouble(double d)
+		{
+			return Math.sqrt(d);
+		}
+
+		@Override
+		public void apply(double[] a, int from, int to)
+		{
+			for(int k=from;k<to;k++)
+				a[k] = Math.sqrt(a[k]);
+		}
+	};
+
+	/**
+	 * takes absolute values of elements.
+	 */
+	public static final UnaryFunctor ABS = new UnaryFunctor()
+	{
+		@Override
+		public double applyAsDouble(double d)
+		{
+			return Math.abs(d);
+		}
+
+		@Override
+		public void apply(double[] a, int from, int to)
+		{
+			for(int k=from;k<to;k++)
+				a[k] = Math.abs(a[k]);
+		}
+	};
+
+	/**
+	 * multiplies elements by a constant.
+	 * 
+	 * @param s : factor
+	 * 
+	 * @return functor
+	 */
+	public static UnaryFunctor scale(final double s)
+	{
+		return new UnaryFunctor()
+		{
+			@Override
+			public double applyAsDouble(double d)
+			{
+				return d*s;
+			}
+
+			@Override
+			public void apply(double[] a, int from, int to)
+			{
+				for(int k=from;k<to;k++)
+					a[k] *= s;
+			}
+		};
+	}
+
+	/**
+	 * adds a constant to elements.
+	 * 
+	 * @param s : summand
+	 * 
+	 * @return functor
+	 */
+	public static UnaryFunctor shift(final double s)
+	{
+		return new UnaryFunctor()
+		{
+			@Override
+			public double applyAsDouble(double d)
+			{
+				return d+s;
+			}
+
+			@Override
+			public void apply(double[] a, int from, int to)
+			{
+				for(int k=from;k<to;k++)
+					a[k] += s;
+			}
+		};
+	}
+}
@@ -1,7 +1,6 @@
 package org.roettig.maths.matrix;
 
 import java.io.*;
-import java.util.*;
 import Jama.Matrix;
 
 /**
@@ -28,6 +27,16 @@ public class MMatrix extends Matrix
 		super(r, c, val);
 	}
 
+	/**
+	 * wraps the given array without copying it.
+	 * 
+	 * @param A : two-dimensional array (rows must be of equal length)
+	 */
+	public MMatrix(double[][] A)
+	{
+		super(A);
+	}
+
 	/**
 	 * saves matrix to file.
 	 * 
@@ -36,20 +45,23 @@ public class MMatrix extends Matrix
 	 */
 	public void save(String filename) throws IOException
 	{
-		PrintWriter writer = new PrintWriter (filename);
-		for(int i=0;i<this.getRowDimension();i++)
-		{
-			for(int j=0;j<this.getColumnDimension();j++)
-			{
-				writer.print(String.format(Locale.ENGLISH,"%+12.6f ",this.get(i,j)));
-			}
-			writer.println();
-		}
-		writer.close();
+		MatrixWriter.write(this, filename, false);
+	}
+
+	/**
+	 * saves matrix to file.
+	 * 
+	 * @param filename
+	 * @param gzip : compress file with gzip
+	 * @throws IOException
+	 */
+	public void save(String filename, boolean gzip) throws IOException
+	{
+		MatrixWriter.write(this, filename, gzip);
 	}
 
 	/**
-	 * loads matrix from file.
+	 * loads matrix from whitespace separated text file (one row per line, optionally gzip compressed).
 	 * 
 	 * @param filename
 	 * @return
@@ -57,36 +69,64 @@ public class MMatrix extends Matrix
 	 */
 	public static MMatrix load(String filename) throws IOException
 	{
-		Vector< Vector<Double> > data = new Vector< Vector<Double> >(); 
-		Scanner lineScanner = new Scanner( new File(filename) ); 
-		lineScanner.useDelimiter(System.getProperty("line.separator")); 
+		return TextMatrixReader.read(filename);
+	}
 
-		while ( lineScanner.hasNext() )
-		{
-			String line = lineScanner.next();
-			Scanner scanner = new Scanner(line);
-			scanner.useLocale(Locale.ENGLISH);
-			Vector<Double> row = new Vector<Double>();
-			while( scanner.hasNextDouble() )
-			{
-				double d = scanner.nextDouble();
-				row.add( d );
-			}
-			data.add( row );
-		}
-		lineScanner.close();
+	/**
+	 * saves matrix to NumPy .npy file (row-major float64).
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void saveNpy(String filename) throws IOException
+	{
+		NpyFile.write(this, filename, false);
+	}
 
-		int R = data.size();
-		int C = data.get(0).size();
-		MMatrix ret = new MMatrix(R,C,0.0);
-		for(int r=0;r<R;r++)
-		{
-			for(int c=0;c<C;c++)
-			{
-				ret.set(r,c, data.get(r).get(c));
-			}
-		}
-		return ret;
+	/**
+	 * saves matrix to NumPy .npy file (row-major).
+	 * 
+	 * @param filename
+	 * @param single : store elements as float32 instead of float64
+	 * @throws IOException
+	 */
+	public void saveNpy(String filename, boolean single) throws IOException
+	{
+		NpyFile.write(this, filename, single);
+	}
+
+	/**
+	 * loads matrix from NumPy .npy file (float64 or float32) through a memory mapping.
+	 * 
+	 * @param filename
+	 * @return
+	 * @throws IOException
+	 */
+	public static MMatrix loadNpy(String filename) throws IOException
+	{
+		return NpyFile.open(filename).read();
+	}
+
+	/**
+	 * starts a lazy element pipeline on this matrix.
+	 * 
+	 * @param f : first operation
+	 * 
+	 * @return pipeline (evaluated by toMatrix, into or applyInPlace)
+	 */
+	public ElementPipeline map(ElementFunctor f)
+	{
+		return new ElementPipeline(this).map(f);
+	}
+
+	/**
+	 * starts an empty lazy element pipeline on this matrix.
+	 * 
+	 * @return pipeline (evaluated by toMatrix, into or applyInPlace)
+	 */
+	public ElementPipeline pipeline()
+	{
+		return new ElementPipeline(this);
 	}
 
 	/**
@@ -94,9 +134,9 @@ public class MMatrix extends Matrix
 	 * 
 	 * @param c : target column index
 	 * 
-	 * @return Double-iterator
+	 * @return view on column (Iterable&lt;Double&gt; reading the matrix in place)
 	 */
-	public Iterable<Double> columnIterator(int c)
+	public ColumnIterator columnIterator(int c)
 	{
 		return new ColumnIterator(this,c);
 	}
@@ -106,9 +146,9 @@ public class MMatrix extends Matrix
 	 * 
 	 * @param c : target row index
 	 * 
-	 * @return Double-iterator
+	 * @return view on row (Iterable&lt;Double&gt; reading the matrix in place)
 	 */
-	public Iterable<Double> rowIterator(int r)
+	public RowIterator rowIterator(int r)
 	{
 		return new RowIterator(this,r);
 	}
@@ -116,26 +156,19 @@ public class MMatrix extends Matrix
 	/**
 	 * yields diagonal elements iterator.
 	 * 
-	 * @return
+	 * @return view on diagonal (Iterable&lt;Double&gt; reading the matrix in place)
 	 */
-	public Iterable<Double> diagonalIterator()
+	public DiagonalIterator diagonalIterator()
 	{
 		return new DiagonalIterator(this);
 	}
 
 	public String toString(boolean pretty)
 	{
-		StringBuffer ret = new StringBuffer();
+		StringBuilder ret = new StringBuilder();
 		if(pretty)
 			ret.append("[matrix]\n");
-		for(int i=0;i<this.getRowDimension();i++)
-		{
-			for(int j=0;j<this.getColumnDimension();j++)
-			{
-				ret.append(String.format(Locale.ENGLISH,"%+12.6f ",this.get(i,j)));
-			}
-			ret.append("\n");
-		}
+		MatrixWriter.append(ret, this);
 		if(pretty)
 			ret.append("\n");
 		return ret.toString();
@@ -143,18 +176,7 @@ public class MMatrix extends Matrix
 
 	public String toString()
 	{
-		StringBuffer ret = new StringBuffer();
-		ret.append("[matrix]\n");
-		for(int i=0;i<this.getRowDimension();i++)
-		{
-			for(int j=0;j<this.getColumnDimension();j++)
-			{
-				ret.append(String.format(Locale.ENGLISH,"%+12.6f ",this.get(i,j)));
-			}
-			ret.append("\n");
-		}
-		ret.append("\n");
-		return ret.toString();
+		return toString(true);
 	}
 
 	/**
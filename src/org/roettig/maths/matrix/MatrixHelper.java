@@ -5,6 +5,8 @@ package org.roettig.maths.matrix;
 
 import java.io.IOException;
 
+import org.roettig.maths.util.Parallel;
+
 import Jama.Matrix;
 
 /**
@@ -72,4 +74,163 @@ public class MatrixHelper
 		}
 		return D;
 	}
+
+	/**
+	 * yields a RowMatrix view on a Jama matrix (no copy is made).
+	 * 
+	 * @param m : matrix
+	 * 
+	 * @return view on m
+	 */
+	public static RowMatrix asRowMatrix(Matrix m)
+	{
+		final double[][] A = m.getArray();
+		final int        R = m.getRowDimension();
+		final int        C = m.getColumnDimension();
+		return new RowMatrix()
+		{
+			@Override
+			public int getRowDimension()
+			{
+				return R;
+			}
+
+			@Override
+			public int getColumnDimension()
+			{
+				return C;
+			}
+
+			@Override
+			public double get(int i, int j)
+			{
+				return A[i][j];
+			}
+
+			@Override
+			public void set(int i, int j, double d)
+			{
+				A[i][j] = d;
+			}
+
+			@Override
+			public void getRow(int r, double[] row)
+			{
+				System.arraycopy(A[r], 0, row, 0, C);
+			}
+
+			@Override
+			public void setRow(int r, double[] row)
+			{
+				System.arraycopy(row, 0, A[r], 0, C);
+			}
+		};
+	}
+
+	/**
+	 * copies a RowMatrix onto the heap.
+	 * 
+	 * @param m : matrix
+	 * 
+	 * @return heap copy of m
+	 */
+	public static MMatrix copy(RowMatrix m)
+	{
+		if(m instanceof OffHeapMatrix)
+			return ((OffHeapMatrix) m).toMMatrix();
+		double[][] A = new double[m.getRowDimension()][m.getColumnDimension()];
+		for(int r=0;r<A.length;r++)
+			m.getRow(r, A[r]);
+		return new MMatrix(A);
+	}
+
+	/**
+	 * computes the product A*V, rows of A are streamed in parallel row tiles.
+	 * 
+	 * @param A : (n,m) matrix (getRow must be safe for concurrent use)
+	 * @param V : (m,b) matrix
+	 * 
+	 * @return (n,b) product
+	 */
+	public static Matrix times(final RowMatrix A, Matrix V)
+	{
+		final int        R  = A.getRowDimension();
+		final int        C  = A.getColumnDimension();
+		final int        b  = V.getColumnDimension();
+		if(V.getRowDimension()!=C)
+			throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+		final double[][] v  = V.getArray();
+		final Matrix     Y  = new Matrix(R,b);
+		final double[][] y  = Y.getArray();
+		Parallel.forRange(0, R, Parallel.grain(R, 1+(1<<14)/Math.max(1,C)), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				double[] row = new double[C];
+				for(int i=from;i<to;i++)
+				{
+					A.getRow(i, row);
+					double[] yi = y[i];
+					for(int j=0;j<C;j++)
+					{
+						double   a  = row[j];
+						double[] vj = v[j];
+						for(int l=0;l<b;l++)
+							yi[l] += a*vj[l];
+					}
+				}
+			}
+		});
+		return Y;
+	}
+
+	/**
+	 * flips the sign of each column of V such that its entry of largest magnitude is positive,
+	 * which makes eigenvectors (whose signs are arbitrary) reproducible across decompositions.
+	 * 
+	 * @param V : matrix with eigenvectors (or loadings) in its columns
+	 * @param U : matrix whose columns are flipped along with those of V (may be null)
+	 */
+	public static void normalizeSigns(Matrix V, Matrix U)
+	{
+		double[][] A = V.getArray();
+		int R = V.getRowDimension();
+		int C = V.getColumnDimension();
+		for(int c=0;c<C;c++)
+		{
+			double mx = 0.0;
+			for(int r=0;r<R;r++)
+			{
+				if(Math.abs(A[r][c])>Math.abs(mx))
+					mx = A[r][c];
+			}
+			if(mx<0)
+			{
+				for(int r=0;r<R;r++)
+					A[r][c] = -A[r][c];
+				if(U!=null)
+				{
+					double[][] B = U.getArray();
+					for(int r=0;r<B.length;r++)
+						B[r][c] = -B[r][c];
+				}
+			}
+		}
+	}
+
+	/**
+	 * create array filled with ones.
+	 * 
+	 * @param n : length
+	 * 
+	 * @return array of ones
+	 */
+	public static double[] ones(int n)
+	{
+		double[] ret = new double[n];
+		for(int i=0;i<n;i++)
+			ret[i] = 1.0;
+		return ret;
+	}
 }
@@ -0,0 +1,219 @@
+package org.roettig.maths.matrix;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import Jama.Matrix;
+
+/**
+ * MatrixWriter writes matrices in the whitespace separated text format of MMatrix.save.
+ *
+ * Every element is formatted exactly like String.format(Locale.ENGLISH,"%+12.6f ",d), but
+ * with a hand-rolled fixed-point formatter writing into a reusable output buffer.
+ *
+ * @author roettig
+ *
+ */
+public class MatrixWriter
+{
+	private static final int    BUFFER_SIZE = 1<<20;
+	private static final int    WIDTH       = 12;
+	private static final double SCALE       = 1e6;
+	private static final long   ONE         = 1000000L;
+
+	/**
+	 * maximal length of one formatted element (309 integer digits of Double.MAX_VALUE plus sign, fraction and blank).
+	 */
+	static final int            MAX_CHARS   = 320;
+
+	/**
+	 * values with an absolute value beyond this are formatted with String.format.
+	 */
+	private static final double FAST_LIMIT  = 1e9;
+
+	private OutputStream out;
+	private byte[]       buf  = new byte[BUFFER_SIZE];
+	private int          pos;
+	private char[]       cbuf = new char[MAX_CHARS];
+	private byte[]       nl;
+
+	/**
+	 *
+	 * @param out : target stream
+	 * @param newline : line separator
+	 */
+	public MatrixWriter(OutputStream out, String newline)
+	{
+		this.out = out;
+		this.nl  = newline.getBytes();
+	}
+
+	/**
+	 * writes matrix to file.
+	 *
+	 * @param M : matrix
+	 * @param filename
+	 * @param gzip : compress output with gzip
+	 * @throws IOException
+	 */
+	public static void write(Matrix M, String filename, boolean gzip) throws IOException
+	{
+		OutputStream os = new FileOutputStream(filename);
+		if(gzip)
+			os = new GZIPOutputStream(os, 1<<16);
+		MatrixWriter w = new MatrixWriter(os, System.getProperty("line.separator"));
+		try
+		{
+			w.write(M);
+		}
+		finally
+		{
+			w.close();
+		}
+	}
+
+	/**
+	 * writes all rows of matrix.
+	 *
+	 * @param M : matrix
+	 * @throws IOException
+	 */
+	public void write(Matrix M) throws IOException
+	{
+		double[][] A = M.getArray();
+		int        R = M.getRowDimension();
+		int        C = M.getColumnDimension();
+		for(int r=0;r<R;r++)
+		{
+			double[] row = A[r];
+			for(int c=0;c<C;c++)
+			{
+				if(pos+cbuf.length>buf.length)
+					flush();
+				int n = format(row[c], cbuf, 0);
+				for(int k=0;k<n;k++)
+					buf[pos++] = (byte) cbuf[k];
+			}
+			if(pos+nl.length>buf.length)
+				flush();
+			System.arraycopy(nl, 0, buf, pos, nl.length);
+			pos += nl.length;
+		}
+	}
+
+	/**
+	 * writes buffered bytes to the underlying stream.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException
+	{
+		out.write(buf, 0, pos);
+		pos = 0;
+	}
+
+	/**
+	 * flushes and closes the underlying stream.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * appends the textual representation of M (as used by MMatrix.toString) to sb.
+	 *
+	 * @param sb : target
+	 * @param M : matrix
+	 */
+	public static void append(StringBuilder sb, Matrix M)
+	{
+		double[][] A    = M.getArray();
+		int        R    = M.getRowDimension();
+		int        C    = M.getColumnDimension();
+		char[]     cbuf = new char[MAX_CHARS];
+		sb.ensureCapacity(sb.length()+R*(C*(WIDTH+1)+1));
+		for(int r=0;r<R;r++)
+		{
+			double[] row = A[r];
+			for(int c=0;c<C;c++)
+			{
+				int n = format(row[c], cbuf, 0);
+				sb.append(cbuf, 0, n);
+			}
+			sb.append('\n');
+		}
+	}
+
+	/**
+	 * formats d like String.format(Locale.ENGLISH,"%+12.6f ",d).
+	 *
+	 * @param d : value
+	 * @param dst : target (needs at least MAX_CHARS free chars)
+	 * @param off : offset into dst
+	 * @return number of chars written
+	 */
+	static int format(double d, char[] dst, int off)
+	{
+		double a = Math.abs(d);
+		if(!(a<FAST_LIMIT))
+			return slowFormat(d, dst, off);
+
+		double scaled = a*SCALE;
+		long   q      = (long) scaled;
+		double frac   = scaled-q;
+		// Formatter rounds the shortest decimal representation half-up, so values
+		// too close to a tie are resolved on that representation
+		if(Math.abs(frac-0.5)<=Math.max(1e-7, 4*Math.ulp(scaled)))
+			q = new BigDecimal(Double.toString(a)).setScale(6, RoundingMode.HALF_UP).unscaledValue().longValue();
+		else if(frac>0.5)
+			q++;
+
+		long ip = q/ONE;
+		long fp = q%ONE;
+
+		// digits are produced right to left into the tail of a 32 char window
+		int    end = off+32;
+		int    p   = end;
+		dst[--p] = ' ';
+		for(int k=0;k<6;k++)
+		{
+			dst[--p] = (char) ('0'+fp%10);
+			fp /= 10;
+		}
+		dst[--p] = '.';
+		do
+		{
+			dst[--p] = (char) ('0'+ip%10);
+			ip /= 10;
+		}
+		while(ip>0);
+		dst[--p] = Double.compare(d, 0.0)<0 ? '-' : '+';
+
+		int len = end-p;
+		int pad = Math.max(0, WIDTH+1-len);
+		for(int k=0;k<pad;k++)
+			dst[off+k] = ' ';
+		System.arraycopy(dst, p, dst, off+pad, len);
+		return pad+len;
+	}
+
+	private static int slowFormat(double d, char[] dst, int off)
+	{
+		String s = String.format(Locale.ENGLISH,"%+12.6f ",d);
+		s.getChars(0, s.length(), dst, off);
+		return s.length();
+	}
+}
@@ -0,0 +1,404 @@
+package org.roettig.maths.matrix;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import Jama.Matrix;
+
+/**
+ * NpyFile reads and writes two-dimensional NumPy .npy files holding float64 or float32 values.
+ *
+ * <pre>
+ * {@code
+ * NpyFile npy = NpyFile.open("X.npy");
+ * MMatrix X   = npy.read();
+ * }
+ * </pre>
+ *
+ * The data section is accessed through a memory-mapped FileChannel, so no text parsing
+ * is involved when loading a matrix.
+ *
+ * @author roettig
+ *
+ */
+public class NpyFile
+{
+	private static final byte[] MAGIC = { (byte) 0x93, 'N', 'U', 'M', 'P', 'Y' };
+
+	/**
+	 * maximal number of bytes mapped at once (a MappedByteBuffer is limited to 2GB).
+	 */
+	private static final long MAX_WINDOW = 1L << 30;
+
+	private static final Pattern DESCR   = Pattern.compile("'descr'\\s*:\\s*'([<>=|]?)([a-z])(\\d+)'");
+	private static final Pattern FORTRAN = Pattern.compile("'fortran_order'\\s*:\\s*(True|False)");
+	private static final Pattern SHAPE   = Pattern.compile("'shape'\\s*:\\s*\\(([^)]*)\\)");
+
+	private String    filename;
+	private int       rows;
+	private int       cols;
+	private boolean   single;
+	private boolean   fortranOrder;
+	private ByteOrder order;
+	private long      dataOffset;
+
+	private NpyFile(String filename)
+	{
+		this.filename = filename;
+	}
+
+	/**
+	 * opens .npy file and parses its header.
+	 *
+	 * @param filename
+	 * @return NpyFile describing the stored array
+	 * @throws IOException if file is no supported .npy file
+	 */
+	public static NpyFile open(String filename) throws IOException
+	{
+		NpyFile npy = new NpyFile(filename);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+		try
+		{
+			npy.readHeader(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		return npy;
+	}
+
+	private void readHeader(DataInputStream in) throws IOException
+	{
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		for(int i=0;i<MAGIC.length;i++)
+		{
+			if(magic[i]!=MAGIC[i])
+				throw new IOException(filename+" is no .npy file");
+		}
+		int major = in.readUnsignedByte();
+		in.readUnsignedByte();
+
+		long len;
+		if(major==1)
+		{
+			len = in.readUnsignedByte() | (in.readUnsignedByte()<<8);
+			dataOffset = 10 + len;
+		}
+		else if(major==2 || major==3)
+		{
+			len = (in.readUnsignedByte() | (in.readUnsignedByte()<<8) | (in.readUnsignedByte()<<16)) | ((long) in.readUnsignedByte()<<24);
+			dataOffset = 12 + len;
+		}
+		else
+			throw new IOException("unsupported .npy version "+major);
+
+		byte[] hdr = new byte[(int) len];
+		in.readFully(hdr);
+		String header = new String(hdr, Charset.forName(major==3 ? "UTF-8" : "ISO-8859-1"));
+
+		Matcher m = DESCR.matcher(header);
+		if(!m.find())
+			throw new IOException("missing 'descr' in .npy header of "+filename);
+		String endian = m.group(1);
+		String kind   = m.group(2);
+		int    size   = Integer.parseInt(m.group(3));
+		if(!kind.equals("f") || (size!=8 && size!=4))
+			throw new IOException("unsupported .npy dtype "+endian+kind+size+" (only float64 and float32 are supported)");
+		single = (size==4);
+		order  = endian.equals(">") ? ByteOrder.BIG_ENDIAN : (endian.equals("<") ? ByteOrder.LITTLE_ENDIAN : ByteOrder.nativeOrder());
+
+		m = FORTRAN.matcher(header);
+		fortranOrder = m.find() && m.group(1).equals("True");
+
+		m = SHAPE.matcher(header);
+		if(!m.find())
+			throw new IOException("missing 'shape' in .npy header of "+filename);
+		String[] dims = m.group(1).split(",");
+		long[]   shape = new long[dims.length];
+		int      ndim  = 0;
+		for(String d: dims)
+		{
+			d = d.trim();
+			if(d.length()==0)
+				continue;
+			shape[ndim++] = Long.parseLong(d.endsWith("L") ? d.substring(0,d.length()-1) : d);
+		}
+		if(ndim>2)
+			throw new IOException("only one- or two-dimensional .npy arrays are supported");
+		long r = ndim>0 ? shape[0] : 1;
+		long c = ndim>1 ? shape[1] : 1;
+		if(r>Integer.MAX_VALUE || c>Integer.MAX_VALUE)
+			throw new IOException("array in "+filename+" is too large");
+		rows = (int) r;
+		cols = (int) c;
+	}
+
+	/**
+	 * get number of rows of stored array.
+	 *
+	 * @return #rows
+	 */
+	public int getRowDimension()
+	{
+		return rows;
+	}
+
+	/**
+	 * get number of columns of stored array (1 for one-dimensional arrays).
+	 *
+	 * @return #columns
+	 */
+	public int getColumnDimension()
+	{
+		return cols;
+	}
+
+	/**
+	 * is the array stored as float32 ?
+	 *
+	 * @return true for float32, false for float64
+	 */
+	public boolean isSinglePrecision()
+	{
+		return single;
+	}
+
+	/**
+	 * is the array stored in column-major (Fortran) order ?
+	 *
+	 * @return true for column-major order
+	 */
+	public boolean isFortranOrder()
+	{
+		return fortranOrder;
+	}
+
+	/**
+	 * get byte order of stored elements.
+	 *
+	 * @return byte order
+	 */
+	public ByteOrder getByteOrder()
+	{
+		return order;
+	}
+
+	/**
+	 * get file offset of first data element.
+	 *
+	 * @return offset in bytes
+	 */
+	public long getDataOffset()
+	{
+		return dataOffset;
+	}
+
+	/**
+	 * get size of one element in bytes.
+	 *
+	 * @return 4 or 8
+	 */
+	public int getElementSize()
+	{
+		return single ? 4 : 8;
+	}
+
+	/**
+	 * get name of underlying file.
+	 *
+	 * @return filename
+	 */
+	public String getFilename()
+	{
+		return filename;
+	}
+
+	/**
+	 * reads the stored array into a matrix through a memory mapping of the data section.
+	 *
+	 * @return matrix
+	 * @throws IOException
+	 */
+	public MMatrix read() throws IOException
+	{
+		double[][] A = new double[rows][cols];
+		RandomAccessFile raf = new RandomAccessFile(filename,"r");
+		try
+		{
+			FileChannel ch = raf.getChannel();
+			long needed = dataOffset + (long) rows*cols*getElementSize();
+			if(ch.size()<needed)
+				throw new IOException(filename+" is truncated ("+ch.size()+" bytes, expected "+needed+")");
+			if(fortranOrder)
+				readColumnMajor(ch, A);
+			else
+				readRowMajor(ch, A);
+		}
+		finally
+		{
+			raf.close();
+		}
+		return new MMatrix(A);
+	}
+
+	private void readRowMajor(FileChannel ch, double[][] A) throws IOException
+	{
+		long rowBytes = (long) cols*getElementSize();
+		int  perMap   = (int) Math.max(1, MAX_WINDOW/Math.max(1,rowBytes));
+		float[] tmp   = single ? new float[cols] : null;
+		for(int r0=0;r0<rows;r0+=perMap)
+		{
+			int r1 = Math.min(rows, r0+perMap);
+			ByteBuffer bb = ch.map(FileChannel.MapMode.READ_ONLY, dataOffset+r0*rowBytes, (r1-r0)*rowBytes);
+			bb.order(order);
+			if(single)
+			{
+				FloatBuffer fb = bb.asFloatBuffer();
+				for(int r=r0;r<r1;r++)
+				{
+					fb.get(tmp);
+					double[] row = A[r];
+					for(int c=0;c<cols;c++)
+						row[c] = tmp[c];
+				}
+			}
+			else
+			{
+				DoubleBuffer db = bb.asDoubleBuffer();
+				for(int r=r0;r<r1;r++)
+					db.get(A[r]);
+			}
+		}
+	}
+
+	private void readColumnMajor(FileChannel ch, double[][] A) throws IOException
+	{
+		long colBytes = (long) rows*getElementSize();
+		int  perMap   = (int) Math.max(1, MAX_WINDOW/Math.max(1,colBytes));
+		double[] tmp  = new double[rows];
+		float[]  ftmp = single ? new float[rows] : null;
+		for(int c0=0;c0<cols;c0+=perMap)
+		{
+			int c1 = Math.min(cols, c0+perMap);
+			ByteBuffer bb = ch.map(FileChannel.MapMode.READ_ONLY, dataOffset+c0*colBytes, (c1-c0)*colBytes);
+			bb.order(order);
+			FloatBuffer  fb = single ? bb.asFloatBuffer() : null;
+			DoubleBuffer db = single ? null : bb.asDoubleBuffer();
+			for(int c=c0;c<c1;c++)
+			{
+				if(single)
+				{
+					fb.get(ftmp);
+					for(int r=0;r<rows;r++)
+						tmp[r] = ftmp[r];
+				}
+				else
+					db.get(tmp);
+				for(int r=0;r<rows;r++)
+					A[r][c] = tmp[r];
+			}
+		}
+	}
+
+	/**
+	 * builds a .npy header for a row-major little-endian (rows,cols) array.
+	 *
+	 * @param rows : #rows
+	 * @param cols : #columns
+	 * @param single : float32 instead of float64 elements
+	 * @return header bytes including magic string (length is a multiple of 64)
+	 */
+	static byte[] header(int rows, int cols, boolean single)
+	{
+		String dict = "{'descr': '"+(single ? "<f4" : "<f8")+"', 'fortran_order': False, 'shape': ("+rows+", "+cols+"), }";
+		int  pre  = 10;
+		int  tot  = pre + dict.length() + 1;
+		if(tot+((64-tot%64)%64) > 65535+pre)
+		{
+			pre = 12;
+			tot = pre + dict.length() + 1;
+		}
+		int pad = (64 - tot%64)%64;
+		StringBuilder sb = new StringBuilder(dict);
+		for(int i=0;i<pad;i++)
+			sb.append(' ');
+		sb.append('\n');
+		byte[] hdr = sb.toString().getBytes(Charset.forName("ISO-8859-1"));
+
+		ByteBuffer bb = ByteBuffer.allocate(pre+hdr.length).order(ByteOrder.LITTLE_ENDIAN);
+		bb.put(MAGIC);
+		if(pre==10)
+		{
+			bb.put((byte) 1).put((byte) 0);
+			bb.putShort((short) hdr.length);
+		}
+		else
+		{
+			bb.put((byte) 2).put((byte) 0);
+			bb.putInt(hdr.length);
+		}
+		bb.put(hdr);
+		return bb.array();
+	}
+
+	/**
+	 * writes matrix to .npy file (row-major, little-endian).
+	 *
+	 * @param M : matrix to write
+	 * @param filename
+	 * @param single : store elements as float32 instead of float64
+	 * @throws IOException
+	 */
+	public static void write(Matrix M, String filename, boolean single) throws IOException
+	{
+		int R = M.getRowDimension();
+		int C = M.getColumnDimension();
+		double[][] A = M.getArray();
+
+		int        rowBytes = C*(single ? 4 : 8);
+		ByteBuffer buf      = ByteBuffer.allocateDirect(Math.max(1<<20, rowBytes)).order(ByteOrder.LITTLE_ENDIAN);
+
+		FileOutputStream out = new FileOutputStream(filename);
+		try
+		{
+			FileChannel ch = out.getChannel();
+			buf.put(header(R,C,single));
+			for(int r=0;r<R;r++)
+			{
+				if(buf.remaining()<rowBytes)
+					flush(ch,buf);
+				if(single)
+				{
+					double[] row = A[r];
+					for(int c=0;c<C;c++)
+						buf.putFloat((float) row[c]);
+				}
+				else
+				{
+					buf.asDoubleBuffer().put(A[r]);
+					buf.position(buf.position()+rowBytes);
+				}
+			}
+			flush(ch,buf);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static void flush(FileChannel ch, ByteBuffer buf) throws IOException
+	{
+		buf.flip();
+		while(buf.hasRemaining())
+			ch.write(buf);
+		buf.clear();
+	}
+}
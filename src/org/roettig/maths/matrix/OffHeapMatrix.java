@@ -0,0 +1,203 @@
+package org.roettig.maths.matrix;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+import Jama.Matrix;
+
+/**
+ * OffHeapMatrix is a dense row-major matrix stored outside of the Java heap.
+ *
+ * <pre>
+ * {@code
+ * OffHeapMatrix D2 = OffHeapMatrix.fromMatrix(MDS.computeSquaredDistanceMatrix(X));
+ * MDS mds = new MDS(D2);
+ * }
+ * </pre>
+ *
+ * The elements live in direct (or memory-mapped) buffers of at most 1GB each, a row never
+ * spans two buffers. Large matrices therefore neither enlarge the heap nor have to be scanned
+ * by the garbage collector.
+ *
+ * @author roettig
+ *
+ */
+public class OffHeapMatrix implements RowMatrix
+{
+	/**
+	 * maximal number of doubles per buffer.
+	 */
+	private static final long MAX_BLOCK = 1L<<27;
+
+	private int            rows;
+	private int            cols;
+	private int            rowsPerBlock;
+	private DoubleBuffer[] blocks;
+
+	/**
+	 * allocates a zero-filled off-heap matrix.
+	 *
+	 * @param r : #rows
+	 * @param c : #columns
+	 */
+	public OffHeapMatrix(int r, int c)
+	{
+		init(r, c);
+		for(int b=0;b<blocks.length;b++)
+		{
+			int n = Math.min(rowsPerBlock, rows-b*rowsPerBlock);
+			blocks[b] = ByteBuffer.allocateDirect(n*cols*8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		}
+	}
+
+	private OffHeapMatrix()
+	{
+	}
+
+	private void init(int r, int c)
+	{
+		rows         = r;
+		cols         = c;
+		rowsPerBlock = (int) Math.max(1, Math.min(Math.max(1,r), MAX_BLOCK/Math.max(1,c)));
+		blocks       = new DoubleBuffer[(r+rowsPerBlock-1)/rowsPerBlock];
+	}
+
+	/**
+	 * copies a Jama matrix row by row into off-heap storage.
+	 *
+	 * @param M : source matrix
+	 * @return off-heap copy
+	 */
+	public static OffHeapMatrix fromMatrix(Matrix M)
+	{
+		OffHeapMatrix ret = new OffHeapMatrix(M.getRowDimension(), M.getColumnDimension());
+		double[][]    A   = M.getArray();
+		for(int r=0;r<ret.rows;r++)
+			ret.setRow(r, A[r]);
+		return ret;
+	}
+
+	/**
+	 * maps the data section of a row-major float64 .npy file.
+	 *
+	 * The returned matrix is read-only, set and setRow throw a ReadOnlyBufferException.
+	 *
+	 * @param npy : opened .npy file
+	 * @return matrix backed by the file mapping
+	 * @throws IOException if the file is no row-major float64 array
+	 */
+	public static OffHeapMatrix map(NpyFile npy) throws IOException
+	{
+		if(npy.isSinglePrecision() || npy.isFortranOrder())
+			throw new IOException("only row-major float64 .npy files can be mapped");
+		OffHeapMatrix ret = new OffHeapMatrix();
+		ret.init(npy.getRowDimension(), npy.getColumnDimension());
+		RandomAccessFile raf = new RandomAccessFile(npy.getFilename(),"r");
+		try
+		{
+			ret.mapBlocks(raf.getChannel(), FileChannel.MapMode.READ_ONLY, npy.getDataOffset(), npy.getByteOrder());
+		}
+		finally
+		{
+			raf.close();
+		}
+		return ret;
+	}
+
+	/**
+	 * creates a zero-filled row-major float64 .npy file and maps its data section for writing.
+	 *
+	 * Rows written through set and setRow end up in the file, so matrices larger than the heap
+	 * (or than physical memory) can be produced row by row.
+	 *
+	 * @param filename : .npy file to create (overwritten if it exists)
+	 * @param r : #rows
+	 * @param c : #columns
+	 * @return matrix backed by the file mapping
+	 * @throws IOException
+	 */
+	public static OffHeapMatrix create(String filename, int r, int c) throws IOException
+	{
+		OffHeapMatrix ret = new OffHeapMatrix();
+		ret.init(r, c);
+		byte[] hdr = NpyFile.header(r, c, false);
+		RandomAccessFile raf = new RandomAccessFile(filename,"rw");
+		try
+		{
+			raf.setLength(0);
+			raf.write(hdr);
+			raf.setLength(hdr.length+8L*r*c);
+			ret.mapBlocks(raf.getChannel(), FileChannel.MapMode.READ_WRITE, hdr.length, ByteOrder.LITTLE_ENDIAN);
+		}
+		finally
+		{
+			raf.close();
+		}
+		return ret;
+	}
+
+	private void mapBlocks(FileChannel ch, FileChannel.MapMode mode, long offset, ByteOrder order) throws IOException
+	{
+		long rowBytes = 8L*cols;
+		for(int b=0;b<blocks.length;b++)
+		{
+			int r0 = b*rowsPerBlock;
+			int n  = Math.min(rowsPerBlock, rows-r0);
+			ByteBuffer bb = ch.map(mode, offset+r0*rowBytes, n*rowBytes);
+			blocks[b] = bb.order(order).asDoubleBuffer();
+		}
+	}
+
+	/**
+	 * copies the matrix onto the heap.
+	 *
+	 * @return heap matrix (the only double[][] allocated is the result itself)
+	 */
+	public MMatrix toMMatrix()
+	{
+		double[][] A = new double[rows][cols];
+		for(int r=0;r<rows;r++)
+			getRow(r, A[r]);
+		return new MMatrix(A);
+	}
+
+	@Override
+	public int getRowDimension()
+	{
+		return rows;
+	}
+
+	@Override
+	public int getColumnDimension()
+	{
+		return cols;
+	}
+
+	@Override
+	public double get(int i, int j)
+	{
+		return blocks[i/rowsPerBlock].get((i%rowsPerBlock)*cols+j);
+	}
+
+	@Override
+	public void set(int i, int j, double d)
+	{
+		blocks[i/rowsPerBlock].put((i%rowsPerBlock)*cols+j, d);
+	}
+
+	@Override
+	public void getRow(int r, double[] row)
+	{
+		blocks[r/rowsPerBlock].get((r%rowsPerBlock)*cols, row, 0, cols);
+	}
+
+	@Override
+	public void setRow(int r, double[] row)
+	{
+		blocks[r/rowsPerBlock].put((r%rowsPerBlock)*cols, row, 0, cols);
+	}
+}
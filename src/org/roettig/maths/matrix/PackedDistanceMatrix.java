@@ -0,0 +1,177 @@
+package org.roettig.maths.matrix;
+
+import Jama.Matrix;
+
+/**
+ * PackedDistanceMatrix is a symmetric N x N matrix with zero diagonal of which only the strict
+ * upper triangle is stored.
+ *
+ * <pre>
+ * {@code
+ * PackedDistanceMatrix D2 = PairwiseDistances.squaredPacked(X);
+ * MDS mds = new MDS(D2);
+ * }
+ * </pre>
+ *
+ * Row i of the backing array holds the elements (i,i+1) .. (i,N-1), so the matrix needs about
+ * half the memory of a dense one and is not limited to 2^31 elements. Elements below the diagonal
+ * are read from their mirrored counterparts.
+ *
+ * Element and column applicators work on the stored upper triangle directly: the functor is called
+ * for the elements right of the diagonal only, the lower triangle mirrors the result and the
+ * diagonal stays 0. Each stored element is thus transformed exactly once, also by parallel row tiles.
+ * RowFunctors, which need whole rows, are rejected, and so is transforming a single row or column.
+ *
+ * @author roettig
+ *
+ */
+public class PackedDistanceMatrix implements RowMatrix
+{
+	private int        n;
+	private double[][] U;
+
+	/**
+	 * allocates a zero-filled matrix.
+	 *
+	 * @param n : #rows (and columns)
+	 */
+	public PackedDistanceMatrix(int n)
+	{
+		this.n = n;
+		this.U = new double[n][];
+		for(int i=0;i<n;i++)
+			U[i] = new double[n-1-i];
+	}
+
+	/**
+	 * copies the strict upper triangle of a square matrix.
+	 *
+	 * @param M : symmetric matrix with zero diagonal (the lower triangle is not read)
+	 * @return packed copy
+	 */
+	public static PackedDistanceMatrix fromMatrix(Matrix M)
+	{
+		if(M.getRowDimension()!=M.getColumnDimension())
+			throw new IllegalArgumentException("Matrix must be square.");
+		PackedDistanceMatrix ret = new PackedDistanceMatrix(M.getRowDimension());
+		double[][] A = M.getArray();
+		for(int i=0;i<ret.n;i++)
+			System.arraycopy(A[i], i+1, ret.U[i], 0, ret.n-1-i);
+		return ret;
+	}
+
+	/**
+	 * expands the matrix into a dense one.
+	 *
+	 * @return dense copy
+	 */
+	public MMatrix toMMatrix()
+	{
+		double[][] A = new double[n][n];
+		for(int i=0;i<n;i++)
+		{
+			double[] u = U[i];
+			for(int j=i+1;j<n;j++)
+			{
+				A[i][j] = u[j-i-1];
+				A[j][i] = u[j-i-1];
+			}
+		}
+		return new MMatrix(A);
+	}
+
+	/**
+	 * get backing array, row i holds the elements (i,i+1) .. (i,N-1).
+	 *
+	 * @return upper triangle rows
+	 */
+	public double[][] getArray()
+	{
+		return U;
+	}
+
+	@Override
+	public int getRowDimension()
+	{
+		return n;
+	}
+
+	@Override
+	public int getColumnDimension()
+	{
+		return n;
+	}
+
+	@Override
+	public double get(int i, int j)
+	{
+		if(i==j)
+			return 0.0;
+		if(i>j)
+			return U[j][i-j-1];
+		return U[i][j-i-1];
+	}
+
+	/**
+	 * sets element (i,j) and its mirrored counterpart (j,i).
+	 *
+	 * @throws IllegalArgumentException if a diagonal element is set to a nonzero value
+	 */
+	@Override
+	public void set(int i, int j, double d)
+	{
+		if(i==j)
+		{
+			if(d!=0.0)
+				throw new IllegalArgumentException("diagonal of distance matrix must be 0");
+			return;
+		}
+		if(i>j)
+			U[j][i-j-1] = d;
+		else
+			U[i][j-i-1] = d;
+	}
+
+	/**
+	 * applies f to the stored elements (r,r+1) .. (r,N-1) of rows r0..r1-1.
+	 *
+	 * @param f : ElementFunctor, called with the indices of the upper triangle
+	 * @param r0 : first row (inclusive)
+	 * @param r1 : last row (exclusive)
+	 */
+	void applyUpper(ElementFunctor f, int r0, int r1)
+	{
+		for(int r=r0;r<r1;r++)
+		{
+			double[] u = U[r];
+			if(f instanceof UnaryFunctor)
+			{
+				((UnaryFunctor) f).apply(u, 0, u.length);
+				continue;
+			}
+			for(int c=0;c<u.length;c++)
+				u[c] = f.calculate(r, r+1+c, u[c]);
+		}
+	}
+
+	@Override
+	public void getRow(int r, double[] row)
+	{
+		for(int j=0;j<r;j++)
+			row[j] = U[j][r-j-1];
+		row[r] = 0.0;
+		System.arraycopy(U[r], 0, row, r+1, n-1-r);
+	}
+
+	/**
+	 * stores the elements right of the diagonal of row r.
+	 *
+	 * The elements left of the diagonal belong to rows above, which already stored them when a
+	 * matrix is written (or transformed by an applicator) row by row, they are ignored.
+	 */
+	@Override
+	public void setRow(int r, double[] row)
+	{
+		System.arraycopy(row, r+1, U[r], 0, n-1-r);
+	}
+}
@@ -0,0 +1,130 @@
+package org.roettig.maths.matrix;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.roettig.maths.util.Parallel;
+
+import Jama.Matrix;
+
+/**
+ * ParallelColumnApplicator applies a ElementFunctor to any element within a column, with row
+ * tiles processed concurrently on a ForkJoinPool or a caller-supplied executor.
+ * 
+ * Applying to all columns sweeps each row tile row by row (instead of column by column),
+ * which suits Jama's row-major storage. Work below the threshold is done sequentially.
+ * The functor must be thread-safe.
+ * 
+ * @author roettig
+ *
+ */
+public class ParallelColumnApplicator extends ColumnApplicator
+{
+	private Executor exec;
+	private int      threshold = ParallelElementApplicator.THRESHOLD;
+
+	/**
+	 * 
+	 * @param f : ElementFunctor (thread-safe)
+	 */
+	public ParallelColumnApplicator(ElementFunctor f)
+	{
+		this(f, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * 
+	 * @param f : ElementFunctor (thread-safe)
+	 * @param exec : executor running the row tiles
+	 */
+	public ParallelColumnApplicator(ElementFunctor f, Executor exec)
+	{
+		super(f);
+		this.exec = exec;
+	}
+
+	/**
+	 * set number of elements below which work is done sequentially.
+	 * 
+	 * @param threshold : #elements
+	 */
+	public void setThreshold(int threshold)
+	{
+		this.threshold = threshold;
+	}
+
+	/**
+	 * applies the ElementFunctor to c-th column of matrix M in parallel row tiles.
+	 * 
+	 * @param M : target matrix
+	 * @param c : target column
+	 */
+	@Override
+	public void apply(final Matrix M, final int c)
+	{
+		int R = M.getRowDimension();
+		if(R<threshold)
+		{
+			super.apply(M, c);
+			return;
+		}
+		Parallel.forRange(exec, 0, R, Parallel.grain(R, ParallelElementApplicator.MIN_TILE), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				applyColumn(M, c, from, to);
+			}
+		});
+	}
+
+	/**
+	 * applies the ElementFunctor to all columns of matrix M in parallel row tiles.
+	 * 
+	 * @param M : target matrix
+	 */
+	@Override
+	public void apply(final Matrix M)
+	{
+		int R = M.getRowDimension();
+		int C = M.getColumnDimension();
+		if((long) R*C<threshold)
+		{
+			super.apply(M);
+			return;
+		}
+		Parallel.forRange(exec, 0, R, ParallelElementApplicator.rowGrain(R, C), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				applyRows(M, from, to);
+			}
+		});
+	}
+
+	/**
+	 * applies the ElementFunctor to all columns of a row-wise stored matrix M in parallel row tiles.
+	 * 
+	 * @param M : target matrix
+	 */
+	@Override
+	public void apply(final RowMatrix M)
+	{
+		int R = M.getRowDimension();
+		int C = M.getColumnDimension();
+		if((long) R*C<threshold)
+		{
+			super.apply(M);
+			return;
+		}
+		Parallel.forRange(exec, 0, R, ParallelElementApplicator.rowGrain(R, C), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				applyRows(M, from, to);
+			}
+		});
+	}
+}
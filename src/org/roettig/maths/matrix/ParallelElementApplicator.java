@@ -0,0 +1,142 @@
+package org.roettig.maths.matrix;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.roettig.maths.util.Parallel;
+
+import Jama.Matrix;
+
+/**
+ * ParallelElementApplicator applies a functor to any matrix element, with row tiles processed
+ * concurrently on a ForkJoinPool or a caller-supplied executor.
+ * 
+ * Matrices with fewer elements than the threshold are processed sequentially. The functor
+ * is called concurrently and must therefore be thread-safe.
+ *  
+ * @author roettig
+ *
+ */
+public class ParallelElementApplicator extends ElementApplicator
+{
+	/**
+	 * default number of elements below which matrices are processed sequentially.
+	 */
+	public static final int THRESHOLD = 1<<15;
+
+	/**
+	 * minimal number of elements per tile.
+	 */
+	static final int MIN_TILE = 1<<12;
+
+	private Executor exec;
+	private int      threshold = THRESHOLD;
+
+	/**
+	 * 
+	 * @param f : ElementFunctor (thread-safe)
+	 */
+	public ParallelElementApplicator(ElementFunctor f)
+	{
+		this(f, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * 
+	 * @param f : ElementFunctor (thread-safe)
+	 * @param exec : executor running the row tiles
+	 */
+	public ParallelElementApplicator(ElementFunctor f, Executor exec)
+	{
+		super(f);
+		this.exec = exec;
+	}
+
+	/**
+	 * 
+	 * @param f : RowFunctor (thread-safe)
+	 */
+	public ParallelElementApplicator(RowFunctor f)
+	{
+		this(f, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * 
+	 * @param f : RowFunctor (thread-safe)
+	 * @param exec : executor running the row tiles
+	 */
+	public ParallelElementApplicator(RowFunctor f, Executor exec)
+	{
+		super(f);
+		this.exec = exec;
+	}
+
+	/**
+	 * set number of elements below which matrices are processed sequentially.
+	 * 
+	 * @param threshold : #elements
+	 */
+	public void setThreshold(int threshold)
+	{
+		this.threshold = threshold;
+	}
+
+	/**
+	 * applies ElementFunctor f to any matrix element in parallel row tiles.
+	 * 
+	 * @param M : target matrix
+	 */
+	@Override
+	public void apply(final Matrix M)
+	{
+		int R = M.getRowDimension();
+		int C = M.getColumnDimension();
+		if((long) R*C<threshold)
+		{
+			super.apply(M);
+			return;
+		}
+		Parallel.forRange(exec, 0, R, rowGrain(R, C), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				applyRows(M, from, to);
+			}
+		});
+	}
+
+	/**
+	 * applies ElementFunctor f to any element of a row-wise stored matrix in parallel row tiles.
+	 * 
+	 * @param M : target matrix
+	 */
+	@Override
+	public void apply(final RowMatrix M)
+	{
+		int R = M.getRowDimension();
+		int C = M.getColumnDimension();
+		if((long) R*C<threshold)
+		{
+			super.apply(M);
+			return;
+		}
+		Parallel.forRange(exec, 0, R, rowGrain(R, C), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				applyRows(M, from, to);
+			}
+		});
+	}
+
+	/**
+	 * computes number of rows per tile.
+	 */
+	static int rowGrain(int R, int C)
+	{
+		return Parallel.grain(R, MIN_TILE/Math.max(1,C));
+	}
+}
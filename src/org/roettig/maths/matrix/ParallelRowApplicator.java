@@ -0,0 +1,129 @@
+package org.roettig.maths.matrix;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.roettig.maths.util.Parallel;
+
+import Jama.Matrix;
+
+/**
+ * ParallelRowApplicator applies a ElementFunctor to any matrix element within a row, with
+ * tiles processed concurrently on a ForkJoinPool or a caller-supplied executor.
+ * 
+ * A single row is split into column tiles, the whole matrix into row tiles. Work below the
+ * threshold is done sequentially. The functor must be thread-safe.
+ *  
+ * @author roettig
+ *
+ */
+public class ParallelRowApplicator extends RowApplicator
+{
+	private Executor exec;
+	private int      threshold = ParallelElementApplicator.THRESHOLD;
+
+	/**
+	 * 
+	 * @param f : ElementFunctor (thread-safe)
+	 */
+	public ParallelRowApplicator(ElementFunctor f)
+	{
+		this(f, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * 
+	 * @param f : ElementFunctor (thread-safe)
+	 * @param exec : executor running the tiles
+	 */
+	public ParallelRowApplicator(ElementFunctor f, Executor exec)
+	{
+		super(f);
+		this.exec = exec;
+	}
+
+	/**
+	 * set number of elements below which work is done sequentially.
+	 * 
+	 * @param threshold : #elements
+	 */
+	public void setThreshold(int threshold)
+	{
+		this.threshold = threshold;
+	}
+
+	/**
+	 * applies the ElementFunctor to r-th row of matrix M in parallel column tiles.
+	 * 
+	 * @param M : target matrix
+	 * @param r : target row
+	 */
+	@Override
+	public void apply(final Matrix M, final int r)
+	{
+		int C = M.getColumnDimension();
+		if(C<threshold)
+		{
+			super.apply(M, r);
+			return;
+		}
+		Parallel.forRange(exec, 0, C, Parallel.grain(C, ParallelElementApplicator.MIN_TILE), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				applyRow(M, r, from, to);
+			}
+		});
+	}
+
+	/**
+	 * applies the ElementFunctor to every row of matrix M in parallel row tiles.
+	 * 
+	 * @param M : target matrix
+	 */
+	@Override
+	public void apply(final Matrix M)
+	{
+		int R = M.getRowDimension();
+		int C = M.getColumnDimension();
+		if((long) R*C<threshold)
+		{
+			super.apply(M);
+			return;
+		}
+		Parallel.forRange(exec, 0, R, ParallelElementApplicator.rowGrain(R, C), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				applyRows(M, from, to);
+			}
+		});
+	}
+
+	/**
+	 * applies the ElementFunctor to every row of a row-wise stored matrix M in parallel row tiles.
+	 * 
+	 * @param M : target matrix
+	 */
+	@Override
+	public void apply(final RowMatrix M)
+	{
+		int R = M.getRowDimension();
+		int C = M.getColumnDimension();
+		if((long) R*C<threshold)
+		{
+			super.apply(M);
+			return;
+		}
+		Parallel.forRange(exec, 0, R, ParallelElementApplicator.rowGrain(R, C), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				applyRows(M, from, to);
+			}
+		});
+	}
+}
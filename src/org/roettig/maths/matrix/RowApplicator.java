@@ -11,10 +11,13 @@ import Jama.Matrix;
 public class RowApplicator
 {
 	private ElementFunctor f;
+	private UnaryFunctor   u;
 	
 	public RowApplicator(ElementFunctor f)
 	{
 		this.f = f;
+		if(f instanceof UnaryFunctor)
+			this.u = (UnaryFunctor) f;
 	}
 
 	/**
@@ -25,13 +28,115 @@ public class RowApplicator
 	 */
 	public void apply(Matrix M, int r)
 	{
-		
+		applyRow(M, r, 0, M.getColumnDimension());
+	}
+
+	/**
+	 * applies the ElementFunctor to every row of matrix M.
+	 * 
+	 * @param M : target matrix
+	 */
+	public void apply(Matrix M)
+	{
+		applyRows(M, 0, M.getRowDimension());
+	}
+
+	/**
+	 * applies the ElementFunctor to columns c0..c1-1 of r-th row of matrix M.
+	 * 
+	 * @param M : target matrix
+	 * @param r : target row
+	 * @param c0 : first column (inclusive)
+	 * @param c1 : last column (exclusive)
+	 */
+	protected void applyRow(Matrix M, int r, int c0, int c1)
+	{
+		double[] row = M.getArray()[r];
+		if(u!=null)
+		{
+			u.apply(row, c0, c1);
+			return;
+		}
+		for(int c=c0;c<c1;c++)
+		{
+			row[c] = f.calculate( r, c, row[c] );
+		}
+	}
+
+	/**
+	 * applies the ElementFunctor to rows r0..r1-1 of matrix M.
+	 * 
+	 * @param M : target matrix
+	 * @param r0 : first row (inclusive)
+	 * @param r1 : last row (exclusive)
+	 */
+	protected void applyRows(Matrix M, int r0, int r1)
+	{
+		int C = M.getColumnDimension();
+		for(int r=r0;r<r1;r++)
+			applyRow(M, r, 0, C);
+	}
+
+	/**
+	 * applies the ElementFunctor to every row of a row-wise stored matrix M.
+	 * 
+	 * On a PackedDistanceMatrix the ElementFunctor is applied to the upper triangle only (see there).
+	 * 
+	 * @param M : target matrix
+	 */
+	public void apply(RowMatrix M)
+	{
+		applyRows(M, 0, M.getRowDimension());
+	}
+
+	/**
+	 * applies the ElementFunctor to rows r0..r1-1 of a row-wise stored matrix M.
+	 * 
+	 * @param M : target matrix
+	 * @param r0 : first row (inclusive)
+	 * @param r1 : last row (exclusive)
+	 */
+	protected void applyRows(RowMatrix M, int r0, int r1)
+	{
+		if(M instanceof PackedDistanceMatrix)
+		{
+			((PackedDistanceMatrix) M).applyUpper(f, r0, r1);
+			return;
+		}
+		double[] row = new double[M.getColumnDimension()];
+		for(int r=r0;r<r1;r++)
+			applyRow(M, r, row);
+	}
+
+	/**
+	 * applies the ElementFunctor to r-th row of a row-wise stored matrix M.
+	 * 
+	 * @param M : target matrix (not a PackedDistanceMatrix, whose rows cannot be changed alone)
+	 * @param r : target row
+	 */
+	public void apply(RowMatrix M, int r)
+	{
+		if(M instanceof PackedDistanceMatrix)
+			throw new IllegalArgumentException("a single row of a PackedDistanceMatrix cannot be transformed");
+		applyRow(M, r, new double[M.getColumnDimension()]);
+	}
+
+	/**
+	 * applies the ElementFunctor to r-th row of a row-wise stored matrix M, using row as buffer.
+	 */
+	private void applyRow(RowMatrix M, int r, double[] row)
+	{
 		int C = M.getColumnDimension();
-		 
-		for(int c=0;c<C;c++)
+		M.getRow(r, row);
+		if(u!=null)
+			u.apply(row, 0, C);
+		else
 		{
-			double d = f.calculate( r, c, M.get(r, c) );
-			M.set(r,c,d);
+			for(int c=0;c<C;c++)
+			{
+				row[c] = f.calculate( r, c, row[c] );
+			}
 		}
+		M.setRow(r, row);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,21 @@
+package org.roettig.maths.matrix;
+
+/**
+ * The RowFunctor interface is the base for functors modifying a whole matrix row at once.
+ * 
+ * The functor receives the raw row array of the matrix, so its loop runs without
+ * get/set calls and bounds checks per element.
+ * 
+ * @author roettig
+ *
+ */
+public interface RowFunctor
+{
+	/**
+	 * modifies row in place.
+	 * 
+	 * @param r : row index
+	 * @param row : row elements (backing array of the matrix)
+	 */
+	void calculate(int r, double[] row);
+}
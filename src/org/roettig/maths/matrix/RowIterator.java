@@ -1,22 +1,21 @@
 package org.roettig.maths.matrix;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import org.roettig.maths.util.DoubleView;
+
 import Jama.Matrix;
 
 /**
- * RowIterator implements Iterable&lt;Double&gt;-interface for matrix rows.
+ * RowIterator is a DoubleView (and thus Iterable&lt;Double&gt;) on a matrix row.
  * 
+ * Elements are read in place from the backing array of the matrix.
  * 
  * @author roettig
  *
  */
-public class RowIterator implements Iterable<Double>
+public class RowIterator extends DoubleView
 {
-	private Matrix M;
-	private int r;
-
-	private ArrayList<Double> row;
+	private double[] row;
+	private int C;
 	
 	/**
 	 * 
@@ -25,24 +24,35 @@ public class RowIterator implements Iterable<Double>
 	 */
 	public RowIterator(Matrix M, int r)
 	{
-		this.M = M;
-		this.r = r;
+		this.row = M.getArray()[r];
+		this.C   = M.getColumnDimension();
+	}
+
+	/**
+	 * get number of columns.
+	 */
+	@Override
+	public int size()
+	{
+		return C;
 	}
 
 	/**
-	 * yields Double-iterator over row elements. 
+	 * get element of k-th column.
 	 */
 	@Override
-	public Iterator<Double> iterator()
+	public double get(int k)
+	{
+		return row[k];
+	}
+
+	/**
+	 * get backing array of the row (no copy is made).
+	 * 
+	 * @return row array
+	 */
+	public double[] getArray()
 	{
-		int C = M.getColumnDimension();
-		
-		row = new ArrayList<Double>();
-		
-		for(int c=0;c<C;c++)
-		{
-			row.add( M.get(r, c));
-		}
-		return row.iterator();
+		return row;
 	}
 }
@@ -0,0 +1,56 @@
+package org.roettig.maths.matrix;
+
+/**
+ * The RowMatrix interface is the base for matrix storages that are accessed row by row
+ * instead of through a Jama double[][] array.
+ * 
+ * @author roettig
+ *
+ */
+public interface RowMatrix
+{
+	/**
+	 * 
+	 * @return number of rows
+	 */
+	int getRowDimension();
+
+	/**
+	 * 
+	 * @return number of columns
+	 */
+	int getColumnDimension();
+
+	/**
+	 * 
+	 * @param i : row index
+	 * @param j : column index
+	 * 
+	 * @return value of element
+	 */
+	double get(int i, int j);
+
+	/**
+	 * 
+	 * @param i : row index
+	 * @param j : column index
+	 * @param d : new value of element
+	 */
+	void set(int i, int j, double d);
+
+	/**
+	 * copies the r-th row into row.
+	 * 
+	 * @param r : row index
+	 * @param row : target array (at least getColumnDimension() long)
+	 */
+	void getRow(int r, double[] row);
+
+	/**
+	 * overwrites the r-th row with the values in row.
+	 * 
+	 * @param r : row index
+	 * @param row : source array (at least getColumnDimension() long)
+	 */
+	void setRow(int r, double[] row);
+}
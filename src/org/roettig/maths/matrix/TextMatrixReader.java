@@ -0,0 +1,357 @@
+package org.roettig.maths.matrix;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.roettig.maths.util.Parallel;
+
+/**
+ * TextMatrixReader parses whitespace separated text matrices (one matrix row per line).
+ *
+ * The file is read through a buffered FileChannel and numbers are parsed directly from
+ * the bytes, so no Strings or boxed Doubles are created per element. Large files are split
+ * at line boundaries and the chunks are parsed in parallel, gzip compressed files are
+ * parsed sequentially.
+ *
+ * @author roettig
+ *
+ */
+public class TextMatrixReader
+{
+	/**
+	 * files larger than this (in bytes) are parsed in parallel chunks.
+	 */
+	public static long PARALLEL_THRESHOLD = 8L<<20;
+
+	private static final int    BUFFER_SIZE = 1<<16;
+	private static final long   MIN_CHUNK   = 2L<<20;
+	private static final long   MAX_MANTISSA = 1L<<53;
+	private static final double[] POW10 = {
+		1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+	/**
+	 * reads matrix from text file (gzip compressed files are detected automatically).
+	 *
+	 * @param filename
+	 * @return matrix
+	 * @throws IOException if file is empty, contains malformed numbers or rows of different length
+	 */
+	public static MMatrix read(final String filename) throws IOException
+	{
+		if(isGzip(filename))
+		{
+			Chunk chunk = new Chunk();
+			ReadableByteChannel in = Channels.newChannel(new GZIPInputStream(new FileInputStream(filename), BUFFER_SIZE));
+			try
+			{
+				chunk.parse(in, 0, Long.MAX_VALUE);
+			}
+			finally
+			{
+				in.close();
+			}
+			return assemble(filename, new Chunk[]{ chunk });
+		}
+
+		final long[] bounds;
+		RandomAccessFile raf = new RandomAccessFile(filename,"r");
+		try
+		{
+			FileChannel ch   = raf.getChannel();
+			long        size = ch.size();
+
+			int nchunks = 1;
+			if(size>=PARALLEL_THRESHOLD && Parallel.getParallelism()>1)
+				nchunks = (int) Math.max(2, Math.min(4*Parallel.getParallelism(), size/MIN_CHUNK));
+
+			bounds = new long[nchunks+1];
+			bounds[nchunks] = size;
+			for(int k=1;k<nchunks;k++)
+				bounds[k] = nextLine(ch, Math.max(bounds[k-1], k*size/nchunks), size);
+
+			if(nchunks==1)
+			{
+				Chunk chunk = new Chunk();
+				chunk.parse(ch, 0, size);
+				return assemble(filename, new Chunk[]{ chunk });
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+
+		final Chunk[] chunks = new Chunk[bounds.length-1];
+		try
+		{
+			Parallel.forRange(0, chunks.length, 1, new Parallel.Range()
+			{
+				@Override
+				public void apply(int from, int to)
+				{
+					for(int k=from;k<to;k++)
+					{
+						chunks[k] = new Chunk();
+						try
+						{
+							RandomAccessFile raf = new RandomAccessFile(filename,"r");
+							try
+							{
+								FileChannel ch = raf.getChannel();
+								ch.position(bounds[k]);
+								chunks[k].parse(ch, bounds[k], bounds[k+1]-bounds[k]);
+							}
+							finally
+							{
+								raf.close();
+							}
+						}
+						catch(IOException e)
+						{
+							throw new UncheckedIOException(e);
+						}
+					}
+				}
+			});
+		}
+		catch(UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		return assemble(filename, chunks);
+	}
+
+	private static boolean isGzip(String filename) throws IOException
+	{
+		InputStream in = new FileInputStream(filename);
+		try
+		{
+			return in.read()==0x1f && in.read()==0x8b;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * finds the offset of the first byte following the next line break at or after pos.
+	 */
+	private static long nextLine(FileChannel ch, long pos, long size) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+		while(pos<size)
+		{
+			buf.clear();
+			int n = ch.read(buf, pos);
+			if(n<=0)
+				break;
+			for(int i=0;i<n;i++)
+			{
+				if(buf.get(i)=='\n')
+					return pos+i+1;
+			}
+			pos += n;
+		}
+		return size;
+	}
+
+	private static MMatrix assemble(String filename, Chunk[] chunks) throws IOException
+	{
+		int R = 0;
+		for(Chunk c: chunks)
+			R += c.nrows;
+		if(R==0)
+			throw new IOException(filename+" contains no matrix rows");
+
+		double[][] A = new double[R][];
+		int r = 0;
+		for(Chunk c: chunks)
+		{
+			System.arraycopy(c.rows, 0, A, r, c.nrows);
+			r += c.nrows;
+		}
+		int C = A[0].length;
+		for(r=1;r<R;r++)
+		{
+			if(A[r].length!=C)
+				throw new IOException(filename+": row "+(r+1)+" has "+A[r].length+" columns, expected "+C);
+		}
+		return new MMatrix(A);
+	}
+
+	/**
+	 * Chunk parses the rows found in a byte range of the file.
+	 */
+	private static class Chunk
+	{
+		private double[][]  rows = new double[64][];
+		private int         nrows;
+
+		private double[]    line = new double[64];
+		private int         ncols;
+
+		private byte[]      tok = new byte[64];
+		private int         ntok;
+
+		/**
+		 * parses length bytes (or up to end of stream) from in.
+		 *
+		 * @param in : channel positioned at the first byte to parse
+		 * @param offset : offset of the first byte in the file (for error messages)
+		 * @param length : number of bytes to parse
+		 */
+		void parse(ReadableByteChannel in, long offset, long length) throws IOException
+		{
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+			byte[]     b   = buf.array();
+			long       pos = offset;
+			long       end = offset+length;
+			while(pos<end)
+			{
+				buf.clear();
+				buf.limit((int) Math.min(BUFFER_SIZE, end-pos));
+				int n = in.read(buf);
+				if(n<0)
+					break;
+				for(int i=0;i<n;i++)
+				{
+					byte c = b[i];
+					if(c==' ' || c=='\t' || c=='\n' || c=='\r' || c=='\f' || c==0x0B)
+					{
+						if(ntok>0)
+							endToken(pos+i);
+						if(c=='\n')
+							endLine();
+					}
+					else
+					{
+						if(ntok==tok.length)
+							tok = Arrays.copyOf(tok, 2*ntok);
+						tok[ntok++] = c;
+					}
+				}
+				pos += n;
+			}
+			if(ntok>0)
+				endToken(pos);
+			endLine();
+		}
+
+		private void endToken(long pos) throws IOException
+		{
+			double d;
+			try
+			{
+				d = parseDouble(tok, ntok);
+			}
+			catch(NumberFormatException e)
+			{
+				throw new IOException("malformed number '"+new String(tok,0,ntok,ASCII)+"' at byte offset "+(pos-ntok));
+			}
+			if(ncols==line.length)
+				line = Arrays.copyOf(line, 2*ncols);
+			line[ncols++] = d;
+			ntok = 0;
+		}
+
+		private void endLine()
+		{
+			if(ncols==0)
+				return;
+			if(nrows==rows.length)
+				rows = Arrays.copyOf(rows, 2*nrows);
+			rows[nrows++] = Arrays.copyOf(line, ncols);
+			ncols = 0;
+		}
+	}
+
+	/**
+	 * parses a decimal number from ASCII bytes.
+	 *
+	 * Numbers with at most 15 significant digits and small exponents are converted exactly
+	 * without allocation, anything else is handed to Double.parseDouble.
+	 *
+	 * @param b : bytes
+	 * @param len : number of bytes to parse
+	 * @return value
+	 * @throws NumberFormatException
+	 */
+	static double parseDouble(byte[] b, int len)
+	{
+		int     i    = 0;
+		boolean neg  = false;
+		if(i<len && (b[i]=='-' || b[i]=='+'))
+		{
+			neg = b[i]=='-';
+			i++;
+		}
+		long    mant   = 0;
+		int     exp10  = 0;
+		int     ndig   = 0;
+		int     nsig   = 0;
+		while(i<len && b[i]>='0' && b[i]<='9')
+		{
+			mant = mant*10 + (b[i]-'0');
+			if(mant!=0)
+				nsig++;
+			ndig++;
+			i++;
+		}
+		if(i<len && b[i]=='.')
+		{
+			i++;
+			while(i<len && b[i]>='0' && b[i]<='9')
+			{
+				mant = mant*10 + (b[i]-'0');
+				if(mant!=0)
+					nsig++;
+				exp10--;
+				ndig++;
+				i++;
+			}
+		}
+		if(ndig>0 && i<len && (b[i]=='e' || b[i]=='E'))
+		{
+			i++;
+			boolean eneg = false;
+			if(i<len && (b[i]=='-' || b[i]=='+'))
+			{
+				eneg = b[i]=='-';
+				i++;
+			}
+			int e  = 0;
+			int ne = 0;
+			while(i<len && b[i]>='0' && b[i]<='9')
+			{
+				if(e<100000)
+					e = e*10 + (b[i]-'0');
+				ne++;
+				i++;
+			}
+			if(ne==0)
+				ndig = 0;
+			exp10 += eneg ? -e : e;
+		}
+		if(ndig>0 && i==len && nsig<=15 && mant<MAX_MANTISSA)
+		{
+			double d = mant;
+			if(mant==0)
+				return neg ? -0.0 : 0.0;
+			if(exp10>=0 && exp10<POW10.length)
+				return neg ? -(d*POW10[exp10]) : d*POW10[exp10];
+			if(exp10<0 && -exp10<POW10.length)
+				return neg ? -(d/POW10[-exp10]) : d/POW10[-exp10];
+		}
+		return Double.parseDouble(new String(b, 0, len, ASCII));
+	}
+}
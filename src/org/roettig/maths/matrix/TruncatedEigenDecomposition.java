@@ -0,0 +1,332 @@
+package org.roettig.maths.matrix;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.roettig.maths.util.Parallel;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import Jama.QRDecomposition;
+
+/**
+ * TruncatedEigenDecomposition computes the k leading eigenpairs of a symmetric matrix.
+ *
+ * <pre>
+ * {@code
+ * TruncatedEigenDecomposition evd = new TruncatedEigenDecomposition(B, 3);
+ * double[] ev = evd.getRealEigenvalues(); // descending
+ * Matrix   V  = evd.getV();               // N x 3
+ * }
+ * </pre>
+ *
+ * Block subspace iteration with Rayleigh-Ritz projection: a block of k plus some extra vectors is
+ * repeatedly multiplied by the matrix and re-orthonormalized until the residuals of the leading k
+ * Ritz pairs are small. The matrix is only accessed through block products, which are
+ * parallelized over rows, so it never has to be decomposed (or even stored, see Operator).
+ * Subspace iteration converges towards the eigenvalues of largest magnitude. When negative
+ * eigenvalues (e.g. of the Gramian of non-Euclidean dissimilarities) take so many places in the block
+ * that fewer than k Ritz values are positive, the iteration goes on with A+sigma*I, sigma being the
+ * estimated magnitude of the most negative eigenvalue capped by the operator's lower bound on the
+ * spectrum. This makes the algebraically largest eigenvalues the dominant ones. Callers should check
+ * isConverged().
+ *
+ * @author roettig
+ *
+ */
+public class TruncatedEigenDecomposition
+{
+	/**
+	 * The Operator interface is a symmetric N x N matrix given by its products with blocks of vectors.
+	 */
+	public interface Operator
+	{
+		/**
+		 * get dimension N.
+		 *
+		 * @return N
+		 */
+		int getDimension();
+
+		/**
+		 * computes Y = A*V.
+		 *
+		 * @param V : N x b block of vectors
+		 * @return N x b product
+		 */
+		Matrix times(Matrix V);
+
+		/**
+		 * get a lower bound on the eigenvalues, e.g. from the Gershgorin discs.
+		 *
+		 * @return lower bound of the spectrum
+		 */
+		double getLowerBound();
+	}
+
+	private static final int    MAX_ITER = 500;
+	private static final double TOL      = 1e-10;
+
+	private double[] d;
+	private Matrix   V;
+	private int      iterations;
+	private boolean  converged;
+
+	/**
+	 * computes the k leading eigenpairs of the symmetric matrix A.
+	 *
+	 * @param A : symmetric matrix
+	 * @param k : #eigenpairs
+	 */
+	public TruncatedEigenDecomposition(Matrix A, int k)
+	{
+		this(operator(A), k);
+	}
+
+	/**
+	 * computes the k leading eigenpairs of the symmetric operator A.
+	 *
+	 * @param A : symmetric operator
+	 * @param k : #eigenpairs
+	 */
+	public TruncatedEigenDecomposition(Operator A, int k)
+	{
+		this(A, k, Math.max(k, 8), new Random(4711));
+	}
+
+	/**
+	 * computes the k leading eigenpairs of the symmetric operator A.
+	 *
+	 * @param A : symmetric operator
+	 * @param k : #eigenpairs
+	 * @param extra : #additional vectors in the block (speeds up convergence)
+	 * @param rnd : source of the random start block
+	 */
+	public TruncatedEigenDecomposition(Operator A, int k, int extra, Random rnd)
+	{
+		int N = A.getDimension();
+		if(k<1 || k>N)
+			throw new IllegalArgumentException("number of eigenpairs must be within 1.."+N);
+		int b = Math.min(N, k+Math.max(0,extra));
+
+		Matrix Q = new Matrix(N,b);
+		for(int i=0;i<N;i++)
+			for(int j=0;j<b;j++)
+				Q.set(i, j, rnd.nextGaussian());
+		Q = new QRDecomposition(Q).getQ();
+
+		double[] theta = new double[b];
+		Q = iterate(A, Q, k, 0.0, theta);
+		if(b<N && theta[k-1]<0.0)
+		{
+			// negative eigenvalues crowd the block: go on with A+sigma*I, the most negative Ritz
+			// value estimates lambda_min, the Gershgorin bound caps sigma
+			double sigma = Math.min(-A.getLowerBound(), -2.0*theta[b-1]);
+			if(sigma>0.0)
+			{
+				// keep the positive Ritz vectors, restart the others
+				for(int j=0;j<b;j++)
+					if(theta[j]<0.0)
+						for(int i=0;i<N;i++)
+							Q.set(i, j, rnd.nextGaussian());
+				Q = iterate(A, new QRDecomposition(Q).getQ(), k, sigma, theta);
+			}
+		}
+
+		d = new double[k];
+		System.arraycopy(theta, 0, d, 0, k);
+		V = Q.getMatrix(0, N-1, 0, k-1);
+	}
+
+	/**
+	 * block subspace iteration on A+sigma*I starting from the orthonormal block Q.
+	 *
+	 * @param theta : receives the Ritz values of A in descending order
+	 * @return Ritz vectors
+	 */
+	private Matrix iterate(Operator A, Matrix Q, int k, double sigma, double[] theta)
+	{
+		int N = Q.getRowDimension();
+		int b = Q.getColumnDimension();
+		converged = false;
+		for(int it=0;it<MAX_ITER;it++)
+		{
+			iterations++;
+			Matrix W = A.times(Q);
+			if(sigma>0.0)
+				W.plusEquals(Q.times(sigma));
+
+			// Rayleigh-Ritz on span(Q)
+			Matrix T = Q.transpose().times(W);
+			T = T.plus(T.transpose()).times(0.5);
+			EigenvalueDecomposition evd = new EigenvalueDecomposition(T);
+			double[] ev  = evd.getRealEigenvalues();
+			int[]    idx = descending(ev);
+			for(int j=0;j<b;j++)
+				theta[j] = ev[idx[j]];
+			Matrix S = evd.getV().getMatrix(0, b-1, idx);
+			Q = Q.times(S);
+			W = W.times(S);
+
+			if(b==N || residual(Q, W, theta, k)<=TOL*Math.max(Math.abs(theta[0]), Double.MIN_NORMAL))
+			{
+				converged = true;
+				break;
+			}
+			Q = new QRDecomposition(W).getQ();
+		}
+		for(int j=0;j<b;j++)
+			theta[j] -= sigma;
+		return Q;
+	}
+
+	/**
+	 * get the k leading eigenvalues.
+	 *
+	 * @return eigenvalues in descending order
+	 */
+	public double[] getRealEigenvalues()
+	{
+		return d.clone();
+	}
+
+	/**
+	 * get eigenvectors.
+	 *
+	 * @return N x k matrix with eigenvectors in its columns
+	 */
+	public Matrix getV()
+	{
+		return V;
+	}
+
+	/**
+	 * get number of block iterations done.
+	 *
+	 * @return #iterations
+	 */
+	public int getIterations()
+	{
+		return iterations;
+	}
+
+	/**
+	 * did the residuals drop below the tolerance ?
+	 *
+	 * @return true if converged
+	 */
+	public boolean isConverged()
+	{
+		return converged;
+	}
+
+	/**
+	 * wraps a dense symmetric matrix, block products are computed in parallel row tiles.
+	 *
+	 * @param A : symmetric matrix
+	 * @return operator
+	 */
+	public static Operator operator(final Matrix A)
+	{
+		if(A.getRowDimension()!=A.getColumnDimension())
+			throw new IllegalArgumentException("Matrix must be square.");
+		return new Operator()
+		{
+			@Override
+			public int getDimension()
+			{
+				return A.getRowDimension();
+			}
+
+			@Override
+			public Matrix times(Matrix V)
+			{
+				return MatrixHelper.times(MatrixHelper.asRowMatrix(A), V);
+			}
+
+			@Override
+			public double getLowerBound()
+			{
+				return gershgorin(MatrixHelper.asRowMatrix(A));
+			}
+		};
+	}
+
+	/**
+	 * computes the Gershgorin lower bound min_i (a_ii - sum_{j!=i} |a_ij|) of a symmetric matrix,
+	 * blocks of rows in parallel.
+	 *
+	 * @param A : symmetric matrix
+	 * @return lower bound of the spectrum
+	 */
+	public static double gershgorin(final RowMatrix A)
+	{
+		final int      N   = A.getRowDimension();
+		final int      G   = Parallel.grain(N, 64);
+		final double[] min = new double[(N+G-1)/G];
+		Parallel.forRange(0, min.length, 1, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				double[] row = new double[N];
+				for(int b=from;b<to;b++)
+				{
+					double m = Double.POSITIVE_INFINITY;
+					for(int i=b*G;i<Math.min(N, (b+1)*G);i++)
+					{
+						A.getRow(i, row);
+						double s = 0.0;
+						for(int j=0;j<N;j++)
+							s += Math.abs(row[j]);
+						m = Math.min(m, row[i]-(s-Math.abs(row[i])));
+					}
+					min[b] = m;
+				}
+			}
+		});
+		double m = Double.POSITIVE_INFINITY;
+		for(double v: min)
+			m = Math.min(m, v);
+		return m;
+	}
+
+	private static double residual(Matrix Q, Matrix W, double[] theta, int k)
+	{
+		double[][] q   = Q.getArray();
+		double[][] w   = W.getArray();
+		double     max = 0.0;
+		for(int j=0;j<k;j++)
+		{
+			double s = 0.0;
+			for(int i=0;i<q.length;i++)
+			{
+				double r = w[i][j]-theta[j]*q[i][j];
+				s += r*r;
+			}
+			max = Math.max(max, Math.sqrt(s));
+		}
+		return max;
+	}
+
+	private static int[] descending(double[] ev)
+	{
+		Integer[] idx = new Integer[ev.length];
+		for(int i=0;i<ev.length;i++)
+			idx[i] = i;
+		final double[] e = ev;
+		Arrays.sort(idx, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return Double.compare(e[b], e[a]);
+			}
+		});
+		int[] ret = new int[ev.length];
+		for(int i=0;i<ev.length;i++)
+			ret[i] = idx[i];
+		return ret;
+	}
+}
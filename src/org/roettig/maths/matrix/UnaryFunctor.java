@@ -0,0 +1,70 @@
+package org.roettig.maths.matrix;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The UnaryFunctor interface is the base for index-free functors modifying matrix elements.
+ * 
+ * Applicators detect this shape and call apply(double[],int,int) once per row of the
+ * backing array instead of calculate(i,j,d) once per element. Implementations overriding
+ * that bulk method get their own tight loop, which the JIT can unroll and vectorize.
+ * 
+ * @author roettig
+ *
+ */
+public interface UnaryFunctor extends ElementFunctor, DoubleUnaryOperator
+{
+	/**
+	 * 
+	 * @param d : current value of element
+	 * 
+	 * @return new value of element
+	 */
+	@Override
+	double applyAsDouble(double d);
+
+	/**
+	 * ignores the indices and delegates to applyAsDouble.
+	 */
+	@Override
+	default double calculate(int i, int j, double d)
+	{
+		return applyAsDouble(d);
+	}
+
+	/**
+	 * replaces a[from..to) by their function values.
+	 * 
+	 * @param a : array
+	 * @param from : first index (inclusive)
+	 * @param to : last index (exclusive)
+	 */
+	default void apply(double[] a, int from, int to)
+	{
+		for(int k=from;k<to;k++)
+		{
+			a[k] = applyAsDouble(a[k]);
+		}
+	}
+
+	/**
+	 * wraps an operator (e.g. a lambda or Math::abs) as UnaryFunctor.
+	 * 
+	 * @param op : operator
+	 * 
+	 * @return functor
+	 */
+	static UnaryFunctor of(final DoubleUnaryOperator op)
+	{
+		if(op instanceof UnaryFunctor)
+			return (UnaryFunctor) op;
+		return new UnaryFunctor()
+		{
+			@Override
+			public double applyAsDouble(double d)
+			{
+				return op.applyAsDouble(d);
+			}
+		};
+	}
+}
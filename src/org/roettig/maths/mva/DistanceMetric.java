@@ -0,0 +1,22 @@
+package org.roettig.maths.mva;
+
+/**
+ * The DistanceMetric interface is the base for distance functions between datapoints.
+ * 
+ * Implementations are called concurrently by the distance builders and must be thread-safe.
+ * 
+ * @author roettig
+ *
+ * @param <T> representation of a datapoint
+ */
+public interface DistanceMetric<T>
+{
+	/**
+	 * 
+	 * @param a : first datapoint
+	 * @param b : second datapoint
+	 * 
+	 * @return distance between a and b
+	 */
+	double distance(T a, T b);
+}
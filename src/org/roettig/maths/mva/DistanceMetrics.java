@@ -0,0 +1,76 @@
+package org.roettig.maths.mva;
+
+/**
+ * DistanceMetrics provides common DistanceMetrics for dense descriptors and fingerprints.
+ * 
+ * @author roettig
+ *
+ */
+public class DistanceMetrics
+{
+	/**
+	 * euclidean (L2) distance.
+	 */
+	public static final DistanceMetric<double[]> EUCLIDEAN = new DistanceMetric<double[]>()
+	{
+		@Override
+		public double distance(double[] a, double[] b)
+		{
+			double s = 0.0;
+			for(int k=0;k<a.length;k++)
+			{
+				double d = a[k]-b[k];
+				s += d*d;
+			}
+			return Math.sqrt(s);
+		}
+	};
+
+	/**
+	 * manhattan (L1) distance.
+	 */
+	public static final DistanceMetric<double[]> MANHATTAN = new DistanceMetric<double[]>()
+	{
+		@Override
+		public double distance(double[] a, double[] b)
+		{
+			double s = 0.0;
+			for(int k=0;k<a.length;k++)
+				s += Math.abs(a[k]-b[k]);
+			return s;
+		}
+	};
+
+	/**
+	 * cosine distance 1-cos(a,b) (0 for two zero vectors, 1 if only one of them is zero).
+	 */
+	public static final DistanceMetric<double[]> COSINE = new DistanceMetric<double[]>()
+	{
+		@Override
+		public double distance(double[] a, double[] b)
+		{
+			double ab = 0.0, aa = 0.0, bb = 0.0;
+			for(int k=0;k<a.length;k++)
+			{
+				ab += a[k]*b[k];
+				aa += a[k]*a[k];
+				bb += b[k]*b[k];
+			}
+			if(aa==0.0 || bb==0.0)
+				return (aa==bb) ? 0.0 : 1.0;
+			return Math.max(0.0, 1.0-ab/Math.sqrt(aa*bb));
+		}
+	};
+
+	/**
+	 * Tanimoto (Jaccard) distance 1-|a&b|/|a|b| on fingerprints.
+	 */
+	public static final DistanceMetric<Fingerprint> TANIMOTO = new DistanceMetric<Fingerprint>()
+	{
+		@Override
+		public double distance(Fingerprint a, Fingerprint b)
+		{
+			return 1.0-a.tanimoto(b);
+		}
+	};
+}
@@ -0,0 +1,193 @@
+package org.roettig.maths.mva;
+
+import java.util.Arrays;
+
+import Jama.Matrix;
+
+/**
+ * Fingerprint is a binary feature vector packed into 64 bit words.
+ * 
+ * <pre>
+ * {@code
+ * Fingerprint[] fps = Fingerprint.fromMatrix(X);   // nonzero entries are set bits
+ * Matrix D2 = MDS.computeSquaredDistanceMatrix(fps, DistanceMetrics.TANIMOTO);
+ * }
+ * </pre>
+ * 
+ * Set operations work on whole words with Long.bitCount, a fingerprint takes 1/64 of the
+ * memory of the same bits stored as doubles.
+ * 
+ * @author roettig
+ *
+ */
+public class Fingerprint
+{
+	private int    nbits;
+	private long[] words;
+	private int    card = -1;
+
+	/**
+	 * creates an empty fingerprint.
+	 * 
+	 * @param nbits : #bits
+	 */
+	public Fingerprint(int nbits)
+	{
+		this.nbits = nbits;
+		this.words = new long[(nbits+63)>>>6];
+	}
+
+	/**
+	 * wraps packed words (bit i is bit i%64 of word i/64).
+	 * 
+	 * @param nbits : #bits
+	 * @param words : packed bits (copied, so the cached cardinality stays valid)
+	 */
+	public Fingerprint(int nbits, long[] words)
+	{
+		if(words.length!=(nbits+63)>>>6)
+			throw new IllegalArgumentException(nbits+" bits need "+((nbits+63)>>>6)+" words");
+		this.nbits = nbits;
+		this.words = words.clone();
+	}
+
+	/**
+	 * creates a fingerprint with bits set for the nonzero entries of row.
+	 * 
+	 * @param row : feature vector
+	 * @return fingerprint
+	 */
+	public static Fingerprint fromRow(double[] row)
+	{
+		Fingerprint ret = new Fingerprint(row.length);
+		for(int i=0;i<row.length;i++)
+		{
+			if(row[i]!=0.0)
+				ret.words[i>>>6] |= 1L<<i;
+		}
+		return ret;
+	}
+
+	/**
+	 * creates fingerprints from the rows of a 0/1 matrix.
+	 * 
+	 * @param X : matrix (datapoints in rows)
+	 * @return fingerprints
+	 */
+	public static Fingerprint[] fromMatrix(Matrix X)
+	{
+		double[][]    A   = X.getArray();
+		Fingerprint[] ret = new Fingerprint[X.getRowDimension()];
+		for(int i=0;i<ret.length;i++)
+			ret[i] = fromRow(A[i]);
+		return ret;
+	}
+
+	/**
+	 * get #bits.
+	 * 
+	 * @return size
+	 */
+	public int size()
+	{
+		return nbits;
+	}
+
+	/**
+	 * get bit i.
+	 * 
+	 * @param i : bit index
+	 * @return true if set
+	 */
+	public boolean get(int i)
+	{
+		return (words[i>>>6] & (1L<<i))!=0;
+	}
+
+	/**
+	 * sets bit i.
+	 * 
+	 * @param i : bit index
+	 */
+	public void set(int i)
+	{
+		if(i<0 || i>=nbits)
+			throw new IndexOutOfBoundsException("bit "+i+" of "+nbits);
+		words[i>>>6] |= 1L<<i;
+		card = -1;
+	}
+
+	/**
+	 * get packed words.
+	 * 
+	 * @return copy of the words
+	 */
+	public long[] getWords()
+	{
+		return words.clone();
+	}
+
+	/**
+	 * get number of set bits.
+	 * 
+	 * @return cardinality
+	 */
+	public int cardinality()
+	{
+		int c = card;
+		if(c<0)
+		{
+			c = 0;
+			for(long w: words)
+				c += Long.bitCount(w);
+			card = c;
+		}
+		return c;
+	}
+
+	/**
+	 * get number of bits set in both fingerprints.
+	 * 
+	 * @param o : other fingerprint of same size
+	 * @return size of intersection
+	 */
+	public int intersection(Fingerprint o)
+	{
+		long[] a = words;
+		long[] b = o.words;
+		if(a.length!=b.length)
+			throw new IllegalArgumentException("fingerprints have "+nbits+" and "+o.nbits+" bits");
+		int c = 0;
+		for(int i=0;i<a.length;i++)
+			c += Long.bitCount(a[i] & b[i]);
+		return c;
+	}
+
+	/**
+	 * computes the Tanimoto (Jaccard) similarity |a&b|/|a|b|.
+	 * 
+	 * @param o : other fingerprint of same size
+	 * @return similarity (1 for two empty fingerprints)
+	 */
+	public double tanimoto(Fingerprint o)
+	{
+		int c = intersection(o);
+		int u = cardinality()+o.cardinality()-c;
+		return u==0 ? 1.0 : (double) c/u;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(!(o instanceof Fingerprint))
+			return false;
+		Fingerprint f = (Fingerprint) o;
+		return nbits==f.nbits && Arrays.equals(words, f.words);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return 31*nbits+Arrays.hashCode(words);
+	}
+}
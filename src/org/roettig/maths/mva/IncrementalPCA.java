@@ -0,0 +1,264 @@
+package org.roettig.maths.mva;
+
+import org.roettig.maths.matrix.ColumnStandardizer;
+import org.roettig.maths.matrix.MMatrix;
+import org.roettig.maths.matrix.MatrixHelper;
+import org.roettig.maths.matrix.RowMatrix;
+
+import Jama.Matrix;
+import Jama.SingularValueDecomposition;
+
+/**
+ *
+ * Incremental PCA on a descriptor matrix that arrives as a stream of row batches.
+ *
+ * <pre>
+ * {@code
+ * IncrementalPCA ipca = new IncrementalPCA(3, true);
+ * for(Matrix batch: batches)
+ *     ipca.partialFit(batch);
+ * Matrix V = ipca.getLoadings();
+ * Matrix T = ipca.getScores(batch);
+ * }
+ * </pre>
+ *
+ * Running column means and sums of squared deviations are merged batch by batch. All rows seen
+ * so far are summarized by the ncomp leading singular values and loadings S*V'. A new batch
+ * (centered on its own mean) is stacked below this summary. One extra row carries the shift
+ * between the old and the batch mean. The stack is decomposed again, and the previous summary
+ * is rescaled when the column scales change. Memory is bounded by batch size times #columns,
+ * not by the number of datapoints. As long as ncomp is not smaller than the rank of the data,
+ * the result equals that of PCA on all rows.
+ * Scores are not stored but computed for given rows by getScores.
+ *
+ * @author roettig
+ *
+ */
+public class IncrementalPCA
+{
+	private int      ncomp_;
+	private boolean  standardize_;
+	private long     n_;
+	private double[] means_;
+	private double[] m2_;
+	private double[] scales_;
+	private double[] s_;
+	private Matrix   V_;
+
+	/**
+	 * Ctor for IncrementalPCA.
+	 * @param ncomp : number of components to calculate
+	 * @param standardize : should descriptor matrix be standardized ?
+	 */
+	public IncrementalPCA(int ncomp, boolean standardize)
+	{
+		if(ncomp<1)
+			throw new IllegalArgumentException("number of components must be positive");
+		ncomp_       = ncomp;
+		standardize_ = standardize;
+	}
+
+	/**
+	 * updates the model with a batch of datapoints.
+	 *
+	 * @param X : batch (each row is one datapoint), is not modified
+	 * @return this
+	 */
+	public IncrementalPCA partialFit(Matrix X)
+	{
+		int m = X.getRowDimension();
+		int p = X.getColumnDimension();
+		if(m==0)
+			return this;
+		if(means_==null)
+		{
+			if(ncomp_>p)
+				throw new IllegalArgumentException("number of components must be within 1.."+p);
+			if(m<ncomp_)
+				throw new IllegalArgumentException("first batch needs at least "+ncomp_+" datapoints");
+			means_  = new double[p];
+			m2_     = new double[p];
+			scales_ = MatrixHelper.ones(p);
+		}
+		else if(p!=means_.length)
+			throw new IllegalArgumentException("batch has "+p+" columns, model was fitted on "+means_.length);
+
+		// batch moments
+		double[][] x     = X.getArray();
+		double[]   mean  = new double[p];
+		double[]   m2    = new double[p];
+		for(int r=0;r<m;r++)
+		{
+			double[] row = x[r];
+			double   w   = 1.0/(r+1);
+			for(int c=0;c<p;c++)
+			{
+				double d = row[c]-mean[c];
+				mean[c] += d*w;
+				m2[c]   += d*(row[c]-mean[c]);
+			}
+		}
+
+		// merge into running moments
+		long     n     = n_;
+		long     N     = n+m;
+		double[] shift = new double[p];
+		double[] nmean = new double[p];
+		double[] nm2   = new double[p];
+		for(int c=0;c<p;c++)
+		{
+			double d = mean[c]-means_[c];
+			shift[c] = -d;
+			nmean[c] = means_[c]+d*m/N;
+			nm2[c]   = m2_[c]+m2[c]+d*d*n*m/N;
+		}
+		double[] nscales = MatrixHelper.ones(p);
+		if(standardize_ && N>1)
+		{
+			for(int c=0;c<p;c++)
+			{
+				double s = Math.sqrt(nm2[c]/(N-1));
+				if(s>0)
+					nscales[c] = s;
+			}
+		}
+
+		// stack S*V' of the previous rows, the centered batch and the mean shift
+		int        k = (n>0) ? s_.length : 0;
+		int        R = k+m+(n>0 ? 1 : 0);
+		double[][] Z = new double[R][p];
+		for(int l=0;l<k;l++)
+			for(int c=0;c<p;c++)
+				Z[l][c] = s_[l]*V_.get(c,l)*scales_[c]/nscales[c];
+		for(int r=0;r<m;r++)
+			for(int c=0;c<p;c++)
+				Z[k+r][c] = (x[r][c]-mean[c])/nscales[c];
+		if(n>0)
+		{
+			double f = Math.sqrt((double) n*m/N);
+			for(int c=0;c<p;c++)
+				Z[R-1][c] = f*shift[c]/nscales[c];
+		}
+
+		decompose(new Matrix(Z, R, p));
+
+		n_      = N;
+		means_  = nmean;
+		m2_     = nm2;
+		scales_ = nscales;
+		return this;
+	}
+
+	/**
+	 * updates the model with a batch of datapoints stored row-wise (e.g. an OffHeapMatrix).
+	 *
+	 * @param X : batch (each row is one datapoint)
+	 * @return this
+	 */
+	public IncrementalPCA partialFit(RowMatrix X)
+	{
+		return partialFit(MatrixHelper.copy(X));
+	}
+
+	/**
+	 * keeps the ncomp leading right singular vectors and singular values of Z.
+	 */
+	private void decompose(Matrix Z)
+	{
+		int      R = Z.getRowDimension();
+		int      p = Z.getColumnDimension();
+		Matrix   W;
+		double[] d;
+		// Jama's SVD wants at least as many rows as columns
+		if(R>=p)
+		{
+			SingularValueDecomposition svd = new SingularValueDecomposition(Z);
+			W = svd.getV();
+			d = svd.getSingularValues();
+		}
+		else
+		{
+			SingularValueDecomposition svd = new SingularValueDecomposition(Z.transpose());
+			W = svd.getU();
+			d = svd.getSingularValues();
+		}
+		s_ = new double[ncomp_];
+		for(int l=0;l<ncomp_;l++)
+			s_[l] = Math.abs(d[l])<1e-9 ? 0.0 : d[l];
+		V_ = W.getMatrix(0, p-1, 0, ncomp_-1);
+		MatrixHelper.normalizeSigns(V_, null);
+	}
+
+	/**
+	 * get Matrix of scores (i.e. embeddings/projections of datapoints on pca plane).
+	 *
+	 * @param X : datapoints (in rows), are centered (and scaled) with the running column statistics
+	 * @return matrix of scores
+	 */
+	public Matrix getScores(Matrix X)
+	{
+		MMatrix Xs = getStandardizer().transform(X);
+		return MatrixHelper.times(MatrixHelper.asRowMatrix(Xs), V_);
+	}
+
+	/**
+	 * get loadings (i.e. eigenvectors, vectors spanning pca plane)
+	 *
+	 * @return matrix of loadings
+	 */
+	public Matrix getLoadings()
+	{
+		return V_;
+	}
+
+	/**
+	 * get value of i-th eigenvalue (i < ncomp).
+	 *
+	 * @param i
+	 * @return
+	 */
+	public double getEval(int i)
+	{
+		return s_[i]*s_[i];
+	}
+
+	/**
+	 * calculate goodness of fit for given dimensionality.
+	 *
+	 * @param dim
+	 * @return goodness of fit
+	 */
+	public double getGoodnessOfFit(int dim)
+	{
+		double s1 = 0.0;
+		for(int c=0;c<m2_.length;c++)
+			s1 += m2_[c]/(scales_[c]*scales_[c]);
+		double s2 = 0.0;
+		for(int i=0;i<dim;i++)
+			s2 += getEval(i);
+		return s2/s1;
+	}
+
+	/**
+	 * get number of datapoints seen so far.
+	 *
+	 * @return #datapoints
+	 */
+	public long getNumberOfSamples()
+	{
+		return n_;
+	}
+
+	/**
+	 * get the column centering (and scaling) of all datapoints seen so far.
+	 *
+	 * @return standardizer
+	 */
+	public ColumnStandardizer getStandardizer()
+	{
+		if(means_==null)
+			throw new IllegalStateException("no datapoints have been seen");
+		return new ColumnStandardizer(means_, standardize_ ? scales_ : null);
+	}
+
+}
@@ -0,0 +1,229 @@
+package org.roettig.maths.mva;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.roettig.maths.util.Parallel;
+
+import Jama.Matrix;
+
+/**
+ *
+ * Landmark MDS embeds large datasets by classical MDS on a small set of landmark datapoints.
+ *
+ * <pre>
+ * {@code
+ *
+ * Matrix X = MMatrix.load("library.dat");
+ *
+ * LandmarkMDS lmds = new LandmarkMDS(X, 200);
+ * lmds.compute();
+ * Matrix E = lmds.getX();
+ *
+ * }
+ *
+ * </pre>
+ *
+ * L landmarks are picked (at random or by MaxMin selection, which repeatedly takes the datapoint
+ * farthest from all landmarks chosen so far), classical MDS is run on their L x L squared
+ * distances and every datapoint is triangulated from its L distances to the landmarks, which
+ * are computed on the fly in parallel blocks. Memory and time are O(N*L) instead of O(N^2).
+ *
+ * @author roettig
+ *
+ */
+public class LandmarkMDS
+{
+	public static Logger logger = Logger.getLogger("org.roettig.maths.mva.lmds");
+
+	/**
+	 * landmark selection strategies.
+	 */
+	public enum Selection
+	{
+		RANDOM,
+		MAXMIN
+	}
+
+	private Matrix    Xd;
+	private int       L;
+	private Selection sel;
+	private long      seed;
+	private int[]     landmarks;
+	private MDS       mds;
+	private Matrix    X;
+
+	/**
+	 * Ctor for Landmark MDS with MaxMin landmark selection.
+	 *
+	 * @param _X : descriptor matrix (datapoints in rows)
+	 * @param L : #landmarks
+	 */
+	public LandmarkMDS(Matrix _X, int L)
+	{
+		this(_X, L, Selection.MAXMIN, 4711);
+	}
+
+	/**
+	 * Ctor for Landmark MDS.
+	 *
+	 * @param _X : descriptor matrix (datapoints in rows)
+	 * @param L : #landmarks
+	 * @param sel : landmark selection strategy
+	 * @param seed : seed for random choices
+	 */
+	public LandmarkMDS(Matrix _X, int L, Selection sel, long seed)
+	{
+		int N = _X.getRowDimension();
+		if(L<2 || L>N)
+			throw new IllegalArgumentException("number of landmarks must be within 2.."+N);
+		this.Xd   = _X;
+		this.L    = L;
+		this.sel  = sel;
+		this.seed = seed;
+	}
+
+	/**
+	 * compute Landmark MDS.
+	 *
+	 */
+	public void compute()
+	{
+		landmarks = (sel==Selection.RANDOM) ? randomLandmarks() : maxMinLandmarks();
+
+		Matrix Xl = Xd.getMatrix(landmarks, 0, Xd.getColumnDimension()-1);
+		mds = new MDS(PairwiseDistances.squared(Xl));
+		mds.compute();
+		logger.info("LMDS landmarks="+landmarks.length+" dim="+mds.getDim());
+
+		X = mds.embedDescriptors(Xl, Xd);
+	}
+
+	/**
+	 * get embedding of datapoints.
+	 *
+	 * @return Matrix d-dimensional with coordinates
+	 */
+	public Matrix getX()
+	{
+		return X;
+	}
+
+	/**
+	 * get dimensionality of embedding.
+	 *
+	 * @return dimensionality
+	 */
+	public int getDim()
+	{
+		return mds.getDim();
+	}
+
+	/**
+	 * get indices of the landmark datapoints, MaxMin selection returns fewer than requested when
+	 * there are fewer distinct datapoints.
+	 *
+	 * @return row indices into the descriptor matrix
+	 */
+	public int[] getLandmarks()
+	{
+		return landmarks.clone();
+	}
+
+	/**
+	 * get classical MDS of the landmarks.
+	 *
+	 * @return landmark MDS
+	 */
+	public MDS getLandmarkMDS()
+	{
+		return mds;
+	}
+
+	private int[] randomLandmarks()
+	{
+		int    N   = Xd.getRowDimension();
+		int[]  idx = new int[N];
+		Random rnd = new Random(seed);
+		for(int i=0;i<N;i++)
+			idx[i] = i;
+		// partial Fisher-Yates shuffle
+		for(int i=0;i<L;i++)
+		{
+			int j = i+rnd.nextInt(N-i);
+			int t = idx[i];
+			idx[i] = idx[j];
+			idx[j] = t;
+		}
+		int[] ret = new int[L];
+		System.arraycopy(idx, 0, ret, 0, L);
+		return ret;
+	}
+
+	private int[] maxMinLandmarks()
+	{
+		final int        N    = Xd.getRowDimension();
+		final int        K    = Xd.getColumnDimension();
+		final double[][] A    = Xd.getArray();
+		final double[]   mind = new double[N];
+		Arrays.fill(mind, Double.POSITIVE_INFINITY);
+
+		int[] ret = new int[L];
+		ret[0] = new Random(seed).nextInt(N);
+		final int    G       = Parallel.grain(N, 1024);
+		final int    nblocks = (N+G-1)/G;
+		final int[]  barg    = new int[nblocks];
+		for(int l=1;l<L;l++)
+		{
+			final double[] x = A[ret[l-1]];
+			// chosen landmarks are never picked again
+			mind[ret[l-1]] = -1.0;
+			// update distances to the nearest landmark and find the farthest datapoint per block
+			Parallel.forRange(0, nblocks, 1, new Parallel.Range()
+			{
+				@Override
+				public void apply(int from, int to)
+				{
+					for(int b=from;b<to;b++)
+					{
+						int arg = b*G;
+						for(int i=b*G;i<Math.min(N, (b+1)*G);i++)
+						{
+							if(mind[i]<0.0)
+								continue;
+							double[] y = A[i];
+							double   s = 0.0;
+							for(int k=0;k<K;k++)
+							{
+								double d = x[k]-y[k];
+								s += d*d;
+							}
+							if(s<mind[i])
+								mind[i] = s;
+							if(mind[i]>mind[arg])
+								arg = i;
+						}
+						barg[b] = arg;
+					}
+				}
+			});
+			int arg = barg[0];
+			for(int b=1;b<nblocks;b++)
+			{
+				if(mind[barg[b]]>mind[arg])
+					arg = barg[b];
+			}
+			if(mind[arg]<=0.0)
+			{
+				// all remaining datapoints duplicate a landmark
+				if(l<2)
+					throw new IllegalStateException("all datapoints coincide, landmark MDS needs 2 distinct landmarks");
+				logger.warning("LMDS only "+l+" distinct landmarks of "+L+" requested");
+				return Arrays.copyOf(ret, l);
+			}
+			ret[l] = arg;
+		}
+		return ret;
+	}
+}
@@ -3,19 +3,22 @@
  */
 package org.roettig.maths.mva;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.logging.Logger;
-import org.roettig.maths.matrix.ElementApplicator;
-import org.roettig.maths.matrix.ElementFunctor;
-import org.roettig.maths.matrix.ElementIterator;
-import org.roettig.maths.matrix.RowIterator;
+import org.roettig.maths.matrix.MatrixHelper;
+import org.roettig.maths.matrix.RowMatrix;
+import org.roettig.maths.matrix.TruncatedEigenDecomposition;
 import org.roettig.maths.statistics.Statistics;
-import org.roettig.maths.util.Pair;
+import org.roettig.maths.util.Parallel;
 
 import Jama.EigenvalueDecomposition;
 import Jama.Matrix;
-import Jama.SingularValueDecomposition;
 
 /**
  * 
@@ -30,6 +33,9 @@ import Jama.SingularValueDecomposition;
  * MDS mds = new MDS(D2);
  * mds.compute();
  * 
+ * // large datasets: only the upper triangle of D2 is stored
+ * MDS mds2 = new MDS(PairwiseDistances.squaredPacked(X));
+ * 
  * }
  * 
  * </pre>
@@ -41,12 +47,29 @@ public class MDS
 {
 	public static Logger logger = Logger.getLogger("org.roettig.maths.mva.mds");
 
-	private Matrix D2;
+	/**
+	 * first bytes of saved models ("MDS1").
+	 */
+	private static final int MAGIC = 0x3153444D;
+
+	/**
+	 * maximal #new datapoints whose distances are held at once by embed from descriptors.
+	 */
+	private static final int EMBED_BLOCK = 64;
+
+	/**
+	 * #doubles of the distance block held by each worker of embed from descriptors (2MB).
+	 */
+	private static final int EMBED_BUDGET = 1<<18;
+
+	private RowMatrix D2;
 	private Matrix D2means;
+	private double[] D2colmeans;
 	private double D2mean_tot;
-	private boolean computed = false;
+	private volatile Embedding embedding;
 	private double  eps = 1e-4;
 	private int dim;
+	private int k = 0;
 	private Matrix B;
 	private Matrix Q;
 	private Matrix S;
@@ -59,23 +82,69 @@ public class MDS
 	 * 
 	 */
 	public MDS(Matrix _D2)
+	{
+		D2 = MatrixHelper.asRowMatrix(_D2);
+	}
+
+	/**
+	 * Ctor for MDS on a row-wise stored distance matrix (e.g. an OffHeapMatrix).
+	 * 
+	 * @param _D2 : Matrix of squared distances between all datapoints
+	 * 
+	 */
+	public MDS(RowMatrix _D2)
 	{
 		D2 = _D2;
 	}
 
+	/**
+	 * Ctor for MDS computing at most k dimensions.
+	 * 
+	 * Only the k leading eigenpairs of the Gramian are computed by an iterative solver that
+	 * works on D2 directly, the Gramian is neither decomposed nor stored.
+	 * 
+	 * @param _D2 : Matrix of squared distances between all datapoints
+	 * @param k : target dimensionality
+	 * 
+	 */
+	public MDS(Matrix _D2, int k)
+	{
+		this(MatrixHelper.asRowMatrix(_D2), k);
+	}
+
+	/**
+	 * Ctor for MDS computing at most k dimensions on a row-wise stored distance matrix.
+	 * 
+	 * @param _D2 : Matrix of squared distances between all datapoints
+	 * @param k : target dimensionality
+	 * 
+	 */
+	public MDS(RowMatrix _D2, int k)
+	{
+		if(k<1)
+			throw new IllegalArgumentException("target dimensionality must be positive");
+		D2     = _D2;
+		this.k = Math.min(k, _D2.getRowDimension());
+	}
+
 	/**
 	 * get Gramian matrix.
 	 * 
-	 * @return Gramian matrix
+	 * @return Gramian matrix (null for loaded models)
 	 */
 	public Matrix getGramian()
 	{
+		if(B==null && D2!=null)
+			B = doubleCenter();
 		return B;
 	}
 
 	/**
 	 * get embedding of datapoints.
 	 * 
+	 * The sign of each coordinate axis is fixed by making the eigenvector entry of largest
+	 * magnitude positive.
+	 * 
 	 * @return Matrix d-dimensional with corrdinates
 	 */
 	public Matrix getX()
@@ -99,50 +168,181 @@ public class MDS
 	 */
 	public void compute()
 	{
+		if(D2==null)
+			throw new IllegalStateException("MDS model was loaded without distance matrix");
+		if(k>0)
+		{
+			computeTruncated();
+			return;
+		}
 		int N = D2.getColumnDimension();
+		B = doubleCenter();
+		symmetrize(B);
 
-		// compute centering matrix H
-		Matrix H = new Matrix(N,N);
-		for(int i=0;i<N;i++)
+		// one decomposition serves embedding and projection, eigenvalues of a
+		// symmetric matrix come in ascending order
+		EigenvalueDecomposition evd = new EigenvalueDecomposition(B);
+		double[] ev = evd.getRealEigenvalues();
+		int d = 0;
+		for(int j=N-1;j>=0;j--)
 		{
-			for(int j=0;j<N;j++)
+			logger.info("EV "+ev[j]);
+			if(ev[j]>eps)
+				d++;
+			else
+				break;
+		}
+		int[]    idx = new int[d];
+		double[] evs = new double[d];
+		for(int j=0;j<d;j++)
+		{
+			idx[j] = N-1-j;
+			evs[j] = ev[N-1-j];
+		}
+		setProjection(evd.getV().getMatrix(0, N-1, idx), evs);
+	}
+
+	/**
+	 * saves the fitted model (everything needed by embed) to a binary file.
+	 * 
+	 * @param filename
+	 * @throws IOException
+	 */
+	public void save(String filename) throws IOException
+	{
+		computeEmbeddingMeasures();
+		int      N     = Q.getRowDimension();
+		double[] means = D2means.getColumnPackedCopy();
+		double[] s     = new double[dim];
+		for(int j=0;j<dim;j++)
+			s[j] = S.get(j,j);
+
+		ByteBuffer buf = ByteBuffer.allocateDirect(Math.max(1<<16, 8*dim)).order(ByteOrder.LITTLE_ENDIAN);
+		FileOutputStream out = new FileOutputStream(filename);
+		try
+		{
+			FileChannel ch = out.getChannel();
+			buf.putInt(MAGIC).putInt(N).putInt(dim).putDouble(D2mean_tot);
+			put(ch, buf, means);
+			put(ch, buf, s);
+			double[][] q = Q.getArray();
+			for(int i=0;i<N;i++)
+				put(ch, buf, q[i]);
+			flush(ch, buf);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * loads a model saved by save, it can embed datapoints but not be recomputed.
+	 * 
+	 * @param filename
+	 * @return fitted MDS
+	 * @throws IOException if the file is no MDS model
+	 */
+	public static MDS load(String filename) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(filename,"r");
+		try
+		{
+			// the file is read through a bounded buffer, models may exceed 2GB
+			FileChannel ch  = raf.getChannel();
+			ByteBuffer  buf = ByteBuffer.allocateDirect(1<<16).order(ByteOrder.LITTLE_ENDIAN);
+			buf.limit(0);
+			fill(ch, buf);
+			if(buf.remaining()<20 || buf.getInt()!=MAGIC)
+				throw new IOException(filename+" is no MDS model");
+			int N = buf.getInt();
+			int d = buf.getInt();
+			if(N<0 || d<0 || ch.size()!=12+8*(1+N+d+(long) N*d))
+				throw new IOException(filename+" is truncated or corrupt");
+
+			MDS mds = new MDS((RowMatrix) null);
+			mds.D2mean_tot = buf.getDouble();
+			double[] means = new double[N];
+			double[] s     = new double[d];
+			get(ch, buf, means);
+			get(ch, buf, s);
+			double[][] q = new double[N][d];
+			for(int i=0;i<N;i++)
+				get(ch, buf, q[i]);
+
+			mds.dim     = d;
+			mds.D2means = new Matrix(means, N);
+			mds.Q       = new Matrix(q);
+			mds.S       = new Matrix(d,d);
+			Matrix Ssqrt = new Matrix(d,d);
+			for(int j=0;j<d;j++)
 			{
-				if(i==j)
-					H.set(i,j, (N-1)/(N*1.0) );
-				else
-					H.set(i,j, -1.0/N );
+				mds.S.set(j, j, s[j]);
+				Ssqrt.set(j, j, 1.0/s[j]);
 			}
+			mds.X = mds.Q.times(Ssqrt);
+			return mds;
 		}
+		finally
+		{
+			raf.close();
+		}
+	}
 
-		B = H.times(D2.times(H)).times(-0.5);
-		
-		SingularValueDecomposition svd = new SingularValueDecomposition(B);
-		Matrix Ssqrt = svd.getS();
-
-		double[] svs = svd.getSingularValues();
-		dim = 0;
-		for(Double d: svs)
+	private static void put(FileChannel ch, ByteBuffer buf, double[] v) throws IOException
+	{
+		// arrays larger than the buffer are written in buffer-sized chunks
+		int off = 0;
+		while(off<v.length)
 		{
-			logger.info("SV "+d);
-			if(d>eps)
-				dim++;
-			else
-				break;
+			if(buf.remaining()<8)
+				flush(ch, buf);
+			int n = Math.min(v.length-off, buf.remaining()/8);
+			buf.asDoubleBuffer().put(v, off, n);
+			buf.position(buf.position()+8*n);
+			off += n;
 		}
-		logger.info("MDS dim="+dim);
+	}
 
-		ElementApplicator appl = new ElementApplicator(new ElementFunctor(){
-			@Override
-			public double calculate(int i, int j, double d)
+	private static void flush(FileChannel ch, ByteBuffer buf) throws IOException
+	{
+		buf.flip();
+		while(buf.hasRemaining())
+			ch.write(buf);
+		buf.clear();
+	}
+
+	private static void get(FileChannel ch, ByteBuffer buf, double[] v) throws IOException
+	{
+		// arrays larger than the buffer are read in buffer-sized chunks
+		int off = 0;
+		while(off<v.length)
+		{
+			if(buf.remaining()<8)
 			{
-				return Math.sqrt(d);
+				fill(ch, buf);
+				if(buf.remaining()<8)
+					throw new IOException("unexpected end of MDS model");
 			}
+			int n = Math.min(v.length-off, buf.remaining()/8);
+			buf.asDoubleBuffer().get(v, off, n);
+			buf.position(buf.position()+8*n);
+			off += n;
 		}
-		);
-		appl.apply(Ssqrt);
-		X = svd.getU().times(Ssqrt);
-		X = X.getMatrix(0, N-1, 0, dim-1);
-		//X.print(5,2);
+	}
+
+	/**
+	 * keeps the unread bytes of buf and appends as many bytes of the channel as fit.
+	 */
+	private static void fill(FileChannel ch, ByteBuffer buf) throws IOException
+	{
+		buf.compact();
+		while(buf.hasRemaining())
+		{
+			if(ch.read(buf)<0)
+				break;
+		}
+		buf.flip();
 	}
 
 	/**
@@ -154,171 +354,532 @@ public class MDS
 	 */
 	public Matrix embed(Matrix D2t)
 	{
-		computeEmbeddingMeasures();
-		int K = D2t.getRowDimension();
-		int N = D2.getRowDimension();
+		return embed(MatrixHelper.asRowMatrix(D2t));
+	}
 
-		Matrix G   = new Matrix(K,N);
-		for(int i=0;i<K;i++)
+	/**
+	 * embed new test datapoints given by row-wise stored distances (e.g. a PackedDistanceMatrix).
+	 * 
+	 * @param D2t: matrix with distances to training datapoints
+	 * @return coordinates of embedded test points
+	 *  
+	 */
+	public Matrix embed(RowMatrix D2t)
+	{
+		Matrix ret = new Matrix(D2t.getRowDimension(), embedding().P[0].length);
+		embed(D2t, ret);
+		return ret;
+	}
+
+	/**
+	 * embed new test datapoints into a caller-supplied matrix.
+	 * 
+	 * @param D2t: matrix with distances to training datapoints
+	 * @param out: matrix receiving the coordinates (#test points x dimensionality)
+	 *  
+	 */
+	public void embed(Matrix D2t, Matrix out)
+	{
+		embed(MatrixHelper.asRowMatrix(D2t), out);
+	}
+
+	/**
+	 * embed new test datapoints into a caller-supplied matrix.
+	 * 
+	 * Rows of D2t are streamed in parallel blocks, no intermediate matrices are built. Any
+	 * number of threads may embed concurrently on one MDS.
+	 * 
+	 * @param D2t: matrix with distances to training datapoints
+	 * @param out: matrix receiving the coordinates (#test points x dimensionality)
+	 *  
+	 */
+	public void embed(final RowMatrix D2t, Matrix out)
+	{
+		final Embedding  e  = embedding();
+		final int        K  = D2t.getRowDimension();
+		final int        N  = D2t.getColumnDimension();
+		final int        d  = e.P.length>0 ? e.P[0].length : 0;
+		final double[][] o  = out.getArray();
+		if(N!=e.P.length)
+			throw new IllegalArgumentException("distances to "+N+" datapoints given, MDS has "+e.P.length);
+		if(out.getRowDimension()!=K || out.getColumnDimension()!=d)
+			throw new IllegalArgumentException("output matrix must be "+K+" x "+d);
+		Parallel.forRange(0, K, Parallel.grain(K, 1+(1<<14)/Math.max(1,N)), new Parallel.Range()
 		{
-			RowIterator iter = new RowIterator(D2t,i);
-			double Dmn = Statistics.mean(iter);
-			for(int j=0;j<N;j++)
+			@Override
+			public void apply(int from, int to)
 			{
-				double g = -0.5*(D2t.get(i, j)-D2means.get(j,0)-Dmn+D2mean_tot);
-				G.set(i,j, g);
+				double[] row = new double[N];
+				for(int i=from;i<to;i++)
+				{
+					D2t.getRow(i, row);
+					project(e, row, o[i]);
+				}
 			}
+		});
+	}
+
+	/**
+	 * embed new datapoints given by their descriptors.
+	 * 
+	 * Squared distances to the training datapoints are computed in small blocks of new
+	 * datapoints and projected right away, the #test x #training distance matrix is never built.
+	 * 
+	 * @param Xtrn: descriptors of the training datapoints (in the order of D2)
+	 * @param Xnew: descriptors of the new datapoints
+	 * @return coordinates of embedded datapoints
+	 *  
+	 */
+	public Matrix embedDescriptors(Matrix Xtrn, Matrix Xnew)
+	{
+		Matrix ret = new Matrix(Xnew.getRowDimension(), embedding().P[0].length);
+		embedDescriptors(Xtrn, Xnew, ret);
+		return ret;
+	}
+
+	/**
+	 * embed new datapoints given by their descriptors into a caller-supplied matrix.
+	 * 
+	 * @param Xtrn: descriptors of the training datapoints (in the order of D2)
+	 * @param Xnew: descriptors of the new datapoints
+	 * @param out: matrix receiving the coordinates (#new datapoints x dimensionality)
+	 *  
+	 */
+	public void embedDescriptors(Matrix Xtrn, final Matrix Xnew, Matrix out)
+	{
+		final Embedding  e  = embedding();
+		final int        K  = Xnew.getRowDimension();
+		final int        N  = Xtrn.getRowDimension();
+		final int        d  = e.P.length>0 ? e.P[0].length : 0;
+		final double[][] o  = out.getArray();
+		if(N!=e.P.length)
+			throw new IllegalArgumentException(N+" training datapoints given, MDS has "+e.P.length);
+		if(out.getRowDimension()!=K || out.getColumnDimension()!=d)
+			throw new IllegalArgumentException("output matrix must be "+K+" x "+d);
+
+		final PairwiseDistances.Reference ref = new PairwiseDistances.Reference(Xtrn);
+		// a block of distances to all N training datapoints stays within the budget
+		final int rows    = Math.max(1, Math.min(EMBED_BLOCK, EMBED_BUDGET/Math.max(1,N)));
+		int       nblocks = (K+rows-1)/rows;
+		Parallel.forRange(0, nblocks, 1, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				double[][] D = new double[rows][N];
+				for(int b=from;b<to;b++)
+				{
+					int r0 = b*rows;
+					int r1 = Math.min(K, r0+rows);
+					ref.squared(Xnew, r0, r1, D);
+					for(int i=r0;i<r1;i++)
+						project(e, D[i-r0], o[i]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * projects one row of squared distances to the training datapoints.
+	 */
+	private static void project(Embedding e, double[] row, double[] out)
+	{
+		int    N   = e.P.length;
+		int    d   = out.length;
+		double Dmn = 0.0;
+		for(int j=0;j<N;j++)
+			Dmn += row[j];
+		Dmn /= N;
+		double c = Dmn-e.meanTot;
+		Arrays.fill(out, 0.0);
+		for(int j=0;j<N;j++)
+		{
+			double   g  = -0.5*(row[j]-e.means[j]-c);
+			double[] pj = e.P[j];
+			for(int l=0;l<d;l++)
+				out[l] += g*pj[l];
 		}
-		//G.print(5,2);
-		return G.times(Q).times(S);
 	}
 
 	public Matrix embedGramian(Matrix D2t)
 	{
-		computeEmbeddingMeasures();
+		return embedGramian(MatrixHelper.asRowMatrix(D2t));
+	}
+
+	public Matrix embedGramian(RowMatrix D2t)
+	{
+		Embedding e = embedding();
 		int K = D2t.getRowDimension();
-		int N = D2.getRowDimension();
-		Matrix G   = new Matrix(K,N);
+		int N = e.means.length;
+		if(D2t.getColumnDimension()!=N)
+			throw new IllegalArgumentException("distances to "+D2t.getColumnDimension()+" datapoints given, MDS has "+N);
+		Matrix   G   = new Matrix(K,N);
+		double[] row = new double[N];
 		for(int i=0;i<K;i++)
 		{
-			RowIterator iter = new RowIterator(D2t,i);
-			double Dmn = Statistics.mean(iter);
+			D2t.getRow(i, row);
+			double Dmn = Statistics.mean(row);
+			double[] g = G.getArray()[i];
 			for(int j=0;j<N;j++)
 			{
-				double g = -0.5*(D2t.get(i, j)-D2means.get(j,0)-Dmn+D2mean_tot);
-				G.set(i,j, g);
+				g[j] = -0.5*(row[j]-e.means[j]-Dmn+e.meanTot);
 			}
 		}
 		return G;
 	}
 
+	/**
+	 * precomputes everything needed to embed new datapoints.
+	 * 
+	 * Safe to call concurrently, the work is done only once.
+	 */
 	public void computeEmbeddingMeasures()
 	{
-		if(computed)
-			return;
+		embedding();
+	}
 
-		computed = true;
-		int N = D2.getColumnDimension();
-		//
-		D2means = new Matrix(N,1); 
-		for(int i=0;i<N;i++)
+	/**
+	 * yields the embedding state, building it on first use (double-checked on a volatile field).
+	 */
+	private Embedding embedding()
+	{
+		Embedding e = embedding;
+		if(e==null)
 		{
-			RowIterator iter = new RowIterator(D2,i);
-			double mn = Statistics.mean(iter);
-			D2means.set(i,0, mn);
+			synchronized(this)
+			{
+				e = embedding;
+				if(e==null)
+				{
+					if(Q==null)
+						computeProjection();
+					e = new Embedding(D2means.getColumnPackedCopy(), D2mean_tot, Q.times(S).getArray());
+					embedding = e;
+				}
+			}
 		}
-		//D2means.print(5,3);
+		return e;
+	}
 
-		ElementIterator iter = new ElementIterator(D2);
-		D2mean_tot = Statistics.mean(iter);
-		//System.out.println(D2mean_tot);
+	/**
+	 * computes the eigenvectors Q and inverse root eigenvalues S of the Gramian.
+	 */
+	private void computeProjection()
+	{
+		if(Q==null)
+			compute();
+	}
 
-		// B = G
-		EigenvalueDecomposition evd = new EigenvalueDecomposition(B);
-		List<Double> evs = new ArrayList<Double>();
-		for(Double d: evd.getRealEigenvalues())
+	/**
+	 * computes the k leading eigenpairs of the Gramian and derives embedding and projection from them.
+	 */
+	private void computeTruncated()
+	{
+		computeMeans();
+		int N = D2.getRowDimension();
+		TruncatedEigenDecomposition evd = new TruncatedEigenDecomposition(new Gramian(), k);
+		logger.info("MDS eigensolver iterations="+evd.getIterations()+" converged="+evd.isConverged());
+		if(!evd.isConverged())
+			logger.warning("MDS eigensolver did not converge in "+evd.getIterations()+" iterations, leading eigenpairs are approximate");
+
+		double[] evs = evd.getRealEigenvalues();
+		int d = 0;
+		for(double ev: evs)
 		{
-			evs.add(d);
+			logger.info("EV "+ev);
+			if(ev>eps)
+				d++;
+			else
+				break;
 		}
-		List< Pair<Integer,Double>> sevs = Statistics.sort(evs, false);
+		setProjection(evd.getV().getMatrix(0, N-1, 0, d-1), Arrays.copyOf(evs, d));
+	}
 
-		List<Integer> toFetch = new ArrayList<Integer>();
+	/**
+	 * sets eigenvectors Q (signs normalized), inverse root eigenvalues S and embedding X = Q*S^-1.
+	 * 
+	 * @param V : leading eigenvectors of the Gramian
+	 * @param evs : corresponding (positive) eigenvalues in descending order
+	 */
+	private void setProjection(Matrix V, double[] evs)
+	{
+		dim = evs.length;
+		logger.info("MDS dim="+dim);
+		MatrixHelper.normalizeSigns(V, null);
+		Q = V;
+		S = new Matrix(dim,dim);
+		Matrix Ssqrt = new Matrix(dim,dim);
+		for(int j=0;j<dim;j++)
+		{
+			S.set(j, j, 1.0/Math.sqrt(evs[j]));
+			Ssqrt.set(j, j, Math.sqrt(evs[j]));
+		}
+		X = Q.times(Ssqrt);
+	}
 
-		evs = new ArrayList<Double>();
-		for(Pair<Integer,Double> p: sevs)
+	/**
+	 * replaces A by (A+A')/2, which removes round-off asymmetry.
+	 */
+	private static void symmetrize(Matrix A)
+	{
+		double[][] a = A.getArray();
+		int        N = A.getRowDimension();
+		for(int i=0;i<N;i++)
 		{
-			//System.out.println(p);
-			if(p.getSecond()>eps)
+			for(int j=i+1;j<N;j++)
 			{
-				toFetch.add(p.getFirst());
-				evs.add(p.getSecond());
+				double m = 0.5*(a[i][j]+a[j][i]);
+				a[i][j] = m;
+				a[j][i] = m;
 			}
 		}
-		int[] idx = new int[toFetch.size()];
-		int i=0;
-		for(Integer it: toFetch)
-		{
-			idx[i]=it;
-			i++;
-		}
-		Q = evd.getV().getMatrix(0, N-1, idx);
-		//Q.print(5, 2);
-		S = new Matrix(dim,dim);
-		for(int j=0;j<dim;j++)
+	}
+
+	/**
+	 * Embedding holds the immutable state shared by all embed calls.
+	 */
+	private static final class Embedding
+	{
+		/**
+		 * row means of D2.
+		 */
+		final double[]   means;
+
+		/**
+		 * grand mean of D2.
+		 */
+		final double     meanTot;
+
+		/**
+		 * projection Q*S (N x dim).
+		 */
+		final double[][] P;
+
+		Embedding(double[] means, double meanTot, double[][] P)
 		{
-			S.set(j, j, 1.0/Math.sqrt(evs.get(j)));
+			this.means   = means;
+			this.meanTot = meanTot;
+			this.P       = P;
 		}
-		//S.print(8, 3);
 	}
 
-	public static Matrix computeSquaredDistanceMatrix(Matrix X)
+	/**
+	 * Gramian is the operator B = -0.5*H*D2*H evaluated on D2 and its means.
+	 */
+	private class Gramian implements TruncatedEigenDecomposition.Operator
 	{
-		Matrix D = computeDistanceMatrix(X);
-		ElementApplicator appl = new ElementApplicator(new ElementFunctor(){
+		@Override
+		public int getDimension()
+		{
+			return D2.getRowDimension();
+		}
 
-			@Override
-			public double calculate(int i, int j, double d)
+		@Override
+		public Matrix times(Matrix V)
+		{
+			int        N  = D2.getRowDimension();
+			int        b  = V.getColumnDimension();
+			double[][] v  = V.getArray();
+			double[]   rm = D2means.getColumnPackedCopy();
+			// B*V = -0.5*(D2*V - rm*s' - 1*c' + mean*1*s') with s = 1'*V and c = colmeans'*V
+			double[]   sv = new double[b];
+			double[]   cv = new double[b];
+			for(int i=0;i<N;i++)
+			{
+				for(int l=0;l<b;l++)
+				{
+					sv[l] += v[i][l];
+					cv[l] += D2colmeans[i]*v[i][l];
+				}
+			}
+			Matrix     Y  = MatrixHelper.times(D2, V);
+			double[][] y  = Y.getArray();
+			for(int i=0;i<N;i++)
 			{
-				return d*d;
+				double c = D2mean_tot-rm[i];
+				for(int l=0;l<b;l++)
+					y[i][l] = -0.5*(y[i][l]+c*sv[l]-cv[l]);
 			}
+			return Y;
+		}
+
+		@Override
+		public double getLowerBound()
+		{
+			// rows of B = -0.5*(D2 - rm*1' - 1*colmeans' + mean) are formed on the fly
+			final double[] rm = D2means.getColumnPackedCopy();
+			return TruncatedEigenDecomposition.gershgorin(new RowMatrix()
+			{
+				@Override
+				public int getRowDimension()
+				{
+					return D2.getRowDimension();
+				}
+
+				@Override
+				public int getColumnDimension()
+				{
+					return D2.getColumnDimension();
+				}
+
+				@Override
+				public double get(int i, int j)
+				{
+					return -0.5*(D2.get(i,j)-rm[i]-D2colmeans[j]+D2mean_tot);
+				}
+
+				@Override
+				public void set(int i, int j, double d)
+				{
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public void getRow(int r, double[] row)
+				{
+					D2.getRow(r, row);
+					for(int j=0;j<rm.length;j++)
+						row[j] = -0.5*(row[j]-rm[r]-D2colmeans[j]+D2mean_tot);
+				}
 
-		}); 
-		appl.apply(D);
-		return D;
+				@Override
+				public void setRow(int r, double[] row)
+				{
+					throw new UnsupportedOperationException();
+				}
+			});
+		}
 	}
 
-	public static Matrix computeDistanceMatrix(Matrix X)
+	/**
+	 * computes row, column and grand means of D2 (each row is read once, blocks of rows in parallel).
+	 */
+	private void computeMeans()
 	{
-		int    N = X.getRowDimension();
-		int    K = X.getColumnDimension();
-		Matrix D = new Matrix(N,N);
-		for(int i=0;i<N;i++)
+		if(D2means!=null)
+			return;
+		final int R = D2.getRowDimension();
+		final int N = D2.getColumnDimension();
+		final int G = Parallel.grain(R, 64);
+		final int nblocks = Math.max(1, (R+G-1)/G);
+		final double[]   rmeans = new double[R];
+		final double[][] bsums  = new double[nblocks][];
+		Parallel.forRange(0, nblocks, 1, new Parallel.Range()
 		{
-			for(int j=i;j<N;j++)
+			@Override
+			public void apply(int from, int to)
 			{
-				Matrix r1 = X.getMatrix(i, i, 0, K-1);
-				Matrix r2 = X.getMatrix(j, j, 0, K-1);
-				double d = r1.minus(r2).norm2();
-				D.set(i, j, d);
-				D.set(j, i, d);
+				double[] row = new double[N];
+				for(int b=from;b<to;b++)
+				{
+					double[] csum = new double[N];
+					for(int i=b*G;i<Math.min(R, (b+1)*G);i++)
+					{
+						D2.getRow(i, row);
+						double s = 0.0;
+						for(int j=0;j<N;j++)
+						{
+							s       += row[j];
+							csum[j] += row[j];
+						}
+						rmeans[i] = s/N;
+					}
+					bsums[b] = csum;
+				}
 			}
+		});
+		D2colmeans = bsums[0];
+		for(int b=1;b<nblocks;b++)
+			for(int j=0;j<N;j++)
+				D2colmeans[j] += bsums[b][j];
+		D2mean_tot = 0.0;
+		for(int j=0;j<N;j++)
+		{
+			D2colmeans[j] /= R;
+			D2mean_tot    += D2colmeans[j];
 		}
-		return D;
+		D2mean_tot /= N;
+		D2means = new Matrix(rmeans, R);
 	}
 
-	public static Matrix computeSquaredDistanceMatrix(Matrix X, Matrix Xtst)
+	/**
+	 * computes the Gramian B = -0.5*H*D2*H without forming H.
+	 * 
+	 * B(i,j) = -0.5*(D2(i,j) - rowmean(i) - colmean(j) + mean), rows are filled in parallel.
+	 * 
+	 * @return Gramian matrix
+	 */
+	private Matrix doubleCenter()
 	{
-		Matrix D = computeDistanceMatrix(X,Xtst);
-		ElementApplicator appl = new ElementApplicator(new ElementFunctor(){
-
+		computeMeans();
+		final int        R  = D2.getRowDimension();
+		final int        N  = D2.getColumnDimension();
+		final double[]   rm = D2means.getColumnPackedCopy();
+		final double[]   cm = D2colmeans;
+		final double     mt = D2mean_tot;
+		final Matrix     G  = new Matrix(R,N);
+		final double[][] Ga = G.getArray();
+		Parallel.forRange(0, R, Parallel.grain(R, 16), new Parallel.Range()
+		{
 			@Override
-			public double calculate(int i, int j, double d)
+			public void apply(int from, int to)
 			{
-				return d*d;
+				for(int i=from;i<to;i++)
+				{
+					double[] g = Ga[i];
+					D2.getRow(i, g);
+					double   c = mt-rm[i];
+					for(int j=0;j<N;j++)
+						g[j] = -0.5*(g[j]-cm[j]+c);
+				}
 			}
+		});
+		return G;
+	}
 
-		}); 
-		appl.apply(D);
-		return D;
+	public static Matrix computeSquaredDistanceMatrix(Matrix X)
+	{
+		return PairwiseDistances.squared(X);
+	}
+
+	public static Matrix computeDistanceMatrix(Matrix X)
+	{
+		return PairwiseDistances.euclidean(X);
+	}
+
+	public static Matrix computeSquaredDistanceMatrix(Matrix X, Matrix Xtst)
+	{
+		return PairwiseDistances.squared(X, Xtst);
 	}
 
 	public static Matrix computeDistanceMatrix(Matrix X, Matrix Xtst)
 	{
-		int    N1 = X.getRowDimension();
-		int    N2 = Xtst.getRowDimension();
-		int    K = X.getColumnDimension();
-		Matrix D = new Matrix(N2,N1);
-		for(int i=0;i<N2;i++)
-		{
-			for(int j=0;j<N1;j++)
-			{
-				Matrix r1 = X.getMatrix(j, j, 0, K-1);
-				Matrix r2 = Xtst.getMatrix(i, i, 0, K-1);
-				double d = r1.minus(r2).norm2();
-				D.set(i, j, d);
-			}
-		}
-		return D;
+		return PairwiseDistances.euclidean(X, Xtst);
+	}
+
+	/**
+	 * computes squared distances between all datapoints under any metric.
+	 * 
+	 * @param data : datapoints (e.g. rows of a descriptor matrix or Fingerprints)
+	 * @param metric : distance metric
+	 * @return symmetric matrix of squared distances
+	 */
+	public static <T> Matrix computeSquaredDistanceMatrix(T[] data, DistanceMetric<T> metric)
+	{
+		return PairwiseDistances.squared(data, metric);
+	}
+
+	/**
+	 * computes squared distances between test and training datapoints under any metric.
+	 * 
+	 * @param trn : training datapoints
+	 * @param tst : test datapoints
+	 * @param metric : distance metric
+	 * @return matrix of squared distances with #test rows and #training columns
+	 */
+	public static <T> Matrix computeSquaredDistanceMatrix(T[] trn, T[] tst, DistanceMetric<T> metric)
+	{
+		return PairwiseDistances.squared(trn, tst, metric);
 	}
 
 }
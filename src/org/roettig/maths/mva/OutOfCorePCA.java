@@ -0,0 +1,308 @@
+package org.roettig.maths.mva;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.roettig.maths.matrix.ColumnStandardizer;
+import org.roettig.maths.matrix.CrossProducts;
+import org.roettig.maths.matrix.MatrixHelper;
+import org.roettig.maths.matrix.NpyFile;
+import org.roettig.maths.matrix.OffHeapMatrix;
+import org.roettig.maths.matrix.RowMatrix;
+import org.roettig.maths.util.Parallel;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+
+/**
+ *
+ * Two-pass PCA on descriptor matrices that do not fit into memory.
+ *
+ * <pre>
+ * {@code
+ * OutOfCorePCA pca = new OutOfCorePCA("descriptors.npy", 3, true);
+ * pca.compute();                                      // pass 1
+ * OffHeapMatrix T = pca.writeScores("scores.npy");    // pass 2
+ * }
+ * </pre>
+ *
+ * The descriptor matrix is read row by row, typically from a memory-mapped row-major float64
+ * .npy file. The first pass splits the rows among the worker threads. Each worker reads tiles of
+ * rows, centers every tile on its own mean and adds the tile's cross-product to a private
+ * p x p comoment matrix. Tiles and, at the end, the workers' accumulators are merged with a
+ * rank-1 correction for the differing means. This yields the column means, the variances and the
+ * centered cross-product, whose eigendecomposition gives loadings and eigenvalues. The second pass
+ * standardizes and projects the rows in parallel blocks, writing the scores straight into a
+ * memory-mapped .npy file. Heap usage is O(p^2) per worker thread, independent of the number of
+ * datapoints.
+ *
+ * @author roettig
+ *
+ */
+public class OutOfCorePCA
+{
+	/**
+	 * #rows read and centered at once.
+	 */
+	private static final int ROWS = 256;
+
+	private RowMatrix          X_;
+	private int                ncomp_;
+	private boolean            standardize_;
+	private ColumnStandardizer standardizer_;
+	private double[]           evals_;
+	private double             totVar_;
+	private Matrix             V_;
+
+	/**
+	 * Ctor for OutOfCorePCA.
+	 * @param X : descriptor matrix (each row is one datapoint), e.g. a mapped OffHeapMatrix
+	 * @param ncomp : number of components to calculate
+	 * @param standardize : should descriptor matrix be standardized ?
+	 */
+	public OutOfCorePCA(RowMatrix X, int ncomp, boolean standardize)
+	{
+		if(ncomp<1 || ncomp>X.getColumnDimension())
+			throw new IllegalArgumentException("number of components must be within 1.."+X.getColumnDimension());
+		X_           = X;
+		ncomp_       = ncomp;
+		standardize_ = standardize;
+	}
+
+	/**
+	 * Ctor for OutOfCorePCA on a row-major float64 .npy file, which is memory-mapped.
+	 * @param filename : .npy file with the descriptor matrix (each row is one datapoint)
+	 * @param ncomp : number of components to calculate
+	 * @param standardize : should descriptor matrix be standardized ?
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public OutOfCorePCA(String filename, int ncomp, boolean standardize) throws IOException
+	{
+		this(OffHeapMatrix.map(NpyFile.open(filename)), ncomp, standardize);
+	}
+
+	/**
+	 * compute column statistics, cross-product and its eigendecomposition (first pass over the data).
+	 *
+	 */
+	public void compute()
+	{
+		final int N = X_.getRowDimension();
+		final int p = X_.getColumnDimension();
+		if(N<2)
+			throw new IllegalStateException("PCA needs at least 2 datapoints");
+
+		// one accumulator per worker thread
+		final int          nacc  = Math.max(1, Math.min(Parallel.getParallelism(), (N+ROWS-1)/ROWS));
+		final int          G     = (N+nacc-1)/nacc;
+		final long[]       an    = new long[nacc];
+		final double[][]   amean = new double[nacc][];
+		final double[][][] aC    = new double[nacc][][];
+		Parallel.forRange(0, nacc, 1, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				double[][] buf = new double[ROWS][p];
+				double[]   mb  = new double[p];
+				for(int a=from;a<to;a++)
+				{
+					long       n    = 0;
+					double[]   mean = new double[p];
+					double[][] C    = new double[p][p];
+					int        r1   = Math.min(N, (a+1)*G);
+					for(int r0=a*G;r0<r1;r0+=ROWS)
+					{
+						int m = Math.min(ROWS, r1-r0);
+						Arrays.fill(mb, 0.0);
+						for(int r=0;r<m;r++)
+						{
+							double[] row = buf[r];
+							X_.getRow(r0+r, row);
+							for(int c=0;c<p;c++)
+								mb[c] += row[c];
+						}
+						for(int c=0;c<p;c++)
+							mb[c] /= m;
+						for(int r=0;r<m;r++)
+						{
+							double[] row = buf[r];
+							for(int c=0;c<p;c++)
+								row[c] -= mb[c];
+						}
+						CrossProducts.addTransposeTimes(buf, 0, m, C);
+						n = merge(n, mean, C, m, mb, null);
+					}
+					an[a]    = n;
+					amean[a] = mean;
+					aC[a]    = C;
+				}
+			}
+		});
+		long       n    = an[0];
+		double[]   mean = amean[0];
+		double[][] C    = aC[0];
+		for(int a=1;a<nacc;a++)
+			n = merge(n, mean, C, an[a], amean[a], aC[a]);
+
+		double[] scales = new double[p];
+		for(int c=0;c<p;c++)
+		{
+			double s = Math.sqrt(C[c][c]/(n-1));
+			scales[c] = (standardize_ && s>0) ? s : 1.0;
+		}
+		standardizer_ = new ColumnStandardizer(mean, standardize_ ? scales : null);
+
+		Matrix K = new Matrix(p,p);
+		for(int i=0;i<p;i++)
+			for(int j=i;j<p;j++)
+			{
+				double v = C[i][j]/(scales[i]*scales[j]);
+				K.set(i, j, v);
+				K.set(j, i, v);
+			}
+		EigenvalueDecomposition evd = new EigenvalueDecomposition(K);
+		double[] ev = evd.getRealEigenvalues();
+
+		// Jama returns the eigenvalues of a symmetric matrix in ascending order
+		evals_  = new double[p];
+		totVar_ = 0.0;
+		int[] idx = new int[ncomp_];
+		for(int k=0;k<p;k++)
+		{
+			double d = Math.sqrt(Math.max(0.0, ev[p-1-k]));
+			if(d<1e-9)
+				d = 0.0;
+			evals_[k] = d*d;
+			totVar_  += evals_[k];
+			if(k<ncomp_)
+				idx[k] = p-1-k;
+		}
+		V_ = evd.getV().getMatrix(0, p-1, idx);
+		MatrixHelper.normalizeSigns(V_, null);
+	}
+
+	/**
+	 * merges the moments (nb, mb, Cb) of a set of rows into (n, mean, C), the upper triangles of the
+	 * comoment matrices are used.
+	 *
+	 * @param Cb : comoment matrix of the added rows, null if they were already added to C
+	 * @return merged #rows
+	 */
+	private static long merge(long n, double[] mean, double[][] C, long nb, double[] mb, double[][] Cb)
+	{
+		if(nb==0)
+			return n;
+		int    p = mean.length;
+		long   N = n+nb;
+		double f = (double) n*nb/N;
+		double[] d = new double[p];
+		for(int c=0;c<p;c++)
+			d[c] = mb[c]-mean[c];
+		for(int i=0;i<p;i++)
+		{
+			double[] ci = C[i];
+			double   fi = f*d[i];
+			for(int j=i;j<p;j++)
+				ci[j] += fi*d[j];
+			if(Cb!=null)
+			{
+				double[] bi = Cb[i];
+				for(int j=i;j<p;j++)
+					ci[j] += bi[j];
+			}
+		}
+		for(int c=0;c<p;c++)
+			mean[c] += d[c]*nb/N;
+		return N;
+	}
+
+	/**
+	 * project all datapoints onto the pca plane (second pass over the data).
+	 *
+	 * @param filename : .npy file the N x ncomp scores are written to
+	 * @return scores, backed by the file mapping
+	 * @throws IOException
+	 */
+	public OffHeapMatrix writeScores(String filename) throws IOException
+	{
+		if(V_==null)
+			throw new IllegalStateException("PCA has not been computed");
+		final int           N  = X_.getRowDimension();
+		final int           p  = X_.getColumnDimension();
+		final int           k  = ncomp_;
+		final double[]      mn = standardizer_.getMeans();
+		final double[]      sc = standardizer_.getScales();
+		final double[][]    v  = V_.getArray();
+		final OffHeapMatrix T  = OffHeapMatrix.create(filename, N, k);
+		Parallel.forRange(0, N, Parallel.grain(N, ROWS), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				double[] row = new double[p];
+				double[] t   = new double[k];
+				for(int r=from;r<to;r++)
+				{
+					X_.getRow(r, row);
+					Arrays.fill(t, 0.0);
+					for(int c=0;c<p;c++)
+					{
+						double   x  = (row[c]-mn[c])/sc[c];
+						double[] vc = v[c];
+						for(int l=0;l<k;l++)
+							t[l] += x*vc[l];
+					}
+					T.setRow(r, t);
+				}
+			}
+		});
+		return T;
+	}
+
+	/**
+	 * get loadings (i.e. eigenvectors, vectors spanning pca plane)
+	 *
+	 * @return matrix of loadings
+	 */
+	public Matrix getLoadings()
+	{
+		return V_;
+	}
+
+	/**
+	 * get value of i-th eigenvalue.
+	 *
+	 * @param i
+	 * @return
+	 */
+	public double getEval(int i)
+	{
+		return evals_[i];
+	}
+
+	/**
+	 * calculate goodness of fit for given dimensionality.
+	 *
+	 * @param dim
+	 * @return goodness of fit
+	 */
+	public double getGoodnessOfFit(int dim)
+	{
+		double s2 = 0.0;
+		for(int i=0;i<dim;i++)
+			s2 += evals_[i];
+		return s2/totVar_;
+	}
+
+	/**
+	 * get the column centering (and scaling) that was applied to the descriptor matrix.
+	 *
+	 * @return fitted standardizer
+	 */
+	public ColumnStandardizer getStandardizer()
+	{
+		return standardizer_;
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.*;
 import Jama.*;
 import org.roettig.maths.matrix.*;
 import org.roettig.maths.statistics.Statistics;
+import org.roettig.maths.util.Parallel;
 
 /**
  * 
@@ -13,20 +14,139 @@ import org.roettig.maths.statistics.Statistics;
  * {@code
  * MMatrix X   = MMatrix.load("foods.mat");
  * PCA     pca = new PCA(X,3,true);
+ * PCA.Projection pr = pca.transform(Xnew);
  * }
  * 
- * will compute a 3-dimensional PCA on the supplied descriptor matrix.
+ * will compute a 3-dimensional PCA on the supplied descriptor matrix and project new datapoints
+ * onto it (with their DModX and Hotelling's T^2).
  * 
  * </pre>
+ * 
+ * The decomposition route is chosen by the shape of the N x p descriptor matrix (see Solver): a
+ * full SVD for matrices of moderate aspect ratio, an eigendecomposition of the p x p cross-product
+ * X'*X for tall ones and of the N x N Gram matrix X*X' for wide ones. All routes yield the same
+ * eigenvalues, scores and loadings up to the signs of the components. The full SVD keeps the signs
+ * it has always returned; the other routes make the loading entry of largest magnitude positive.
+ * 
+ * For a few components of a large matrix the randomized solver approximates the leading
+ * components in O(N*p*k):
+ * 
+ * <pre>
+ * {@code
+ * PCA pca = new PCA(X, 5, true, 10, 2, 4711);  // 10 oversamples, 2 power iterations, seed
+ * }
+ * </pre>
  * @author roettig
  *
  */
 public class PCA
 {
+	/**
+	 * decomposition routes.
+	 */
+	public enum Solver
+	{
+		/**
+		 * choose by shape of the descriptor matrix.
+		 */
+		AUTO,
+		/**
+		 * full singular value decomposition of X.
+		 */
+		SVD,
+		/**
+		 * eigendecomposition of the p x p cross-product X'*X.
+		 */
+		COVARIANCE,
+		/**
+		 * eigendecomposition of the N x N Gram matrix X*X'.
+		 */
+		GRAM,
+		/**
+		 * randomized range finder, only the leading ncomp+oversampling eigenvalues are computed.
+		 */
+		RANDOMIZED
+	}
+
+	/**
+	 * Projection holds the scores and distances of new datapoints projected onto a fitted PCA.
+	 */
+	public static class Projection
+	{
+		private Matrix   T;
+		private double[] dmodx;
+		private double[] t2;
+
+		private Projection(Matrix T, double[] dmodx, double[] t2)
+		{
+			this.T     = T;
+			this.dmodx = dmodx;
+			this.t2    = t2;
+		}
+
+		/**
+		 * get Matrix of scores of the new datapoints.
+		 * 
+		 * @return matrix of scores
+		 */
+		public Matrix getScores()
+		{
+			return T;
+		}
+
+		/**
+		 * get DModX for i-th new datapoint (normalized like the training DModX).
+		 * 
+		 * @param i
+		 * @return
+		 */
+		public double getDModX(int i)
+		{
+			return dmodx[i];
+		}
+
+		/**
+		 * get Hotelling's T^2 for i-th new datapoint, i.e. sum_a t_a^2/var(t_a) with the score
+		 * variances of the training datapoints.
+		 * 
+		 * @param i
+		 * @return
+		 */
+		public double getT2(int i)
+		{
+			return t2[i];
+		}
+	}
+
+	/**
+	 * minimal aspect ratio of the descriptor matrix for which AUTO switches to an eigendecomposition.
+	 */
+	public static final int SHAPE_RATIO = 10;
+
+	/**
+	 * default #random directions sampled in addition to ncomp by the randomized solver.
+	 */
+	public static final int DEFAULT_OVERSAMPLING = 10;
+
+	/**
+	 * default #power iterations of the randomized solver.
+	 */
+	public static final int DEFAULT_POWER_ITERATIONS = 2;
+
 	private int ncomp_;
+	
+	private Solver solver_;
+	
+	private int oversampling_;
+	
+	private int powerIterations_;
+	
+	private long seed_;
 		
 	private MMatrix X_;
 	
+	private ColumnStandardizer standardizer_;
+	
 	private Matrix U;
 	
 	private Matrix S;
@@ -42,6 +162,10 @@ public class PCA
 	private Matrix DModX;
 	
 	private Vector<Double> evals  = new Vector<Double>();
+	
+	private double totVar_;
+	
+	private double[] invVar_;
 
 	/**
 	 * Ctor for PCA.
@@ -51,15 +175,157 @@ public class PCA
 	 */
 	public PCA(MMatrix X, int ncomp, boolean standardize)
 	{
-		ncomp_    = ncomp;
-		int N = X.getRowDimension();
+		this(X, ncomp, standardize, Solver.AUTO);
+	}
+
+	/**
+	 * Ctor for PCA.
+	 * @param X : descriptor matrix (each row is one datapoint)
+	 * @param ncomp : number of components to calculate
+	 * @param standardize : should descriptor matrix be standardized ?
+	 * @param solver : decomposition route
+	 */
+	public PCA(MMatrix X, int ncomp, boolean standardize, Solver solver)
+	{
 		// safely encapsulate matrix X
-		X_ = new MMatrix(X);
+		this(new MMatrix(X), ncomp, standardize, solver, DEFAULT_OVERSAMPLING, DEFAULT_POWER_ITERATIONS, 4711);
+	}
+
+	/**
+	 * Ctor for randomized PCA.
+	 * @param X : descriptor matrix (each row is one datapoint)
+	 * @param ncomp : number of components to calculate
+	 * @param standardize : should descriptor matrix be standardized ?
+	 * @param oversampling : #random directions sampled in addition to ncomp
+	 * @param powerIterations : #power iterations (sharpen the range for slowly decaying spectra)
+	 * @param seed : seed of the random directions
+	 */
+	public PCA(MMatrix X, int ncomp, boolean standardize, int oversampling, int powerIterations, long seed)
+	{
+		this(new MMatrix(X), ncomp, standardize, Solver.RANDOMIZED, oversampling, powerIterations, seed);
+	}
+
+	/**
+	 * Ctor for PCA on a row-wise stored descriptor matrix (e.g. an OffHeapMatrix).
+	 * 
+	 * The matrix is copied onto the heap, and the fit keeps the N x p reconstruction and residual
+	 * matrices as well, so about three N x p double arrays are allocated. Use OutOfCorePCA for
+	 * descriptor matrices that do not fit into memory.
+	 * @param X : descriptor matrix (each row is one datapoint)
+	 * @param ncomp : number of components to calculate
+	 * @param standardize : should descriptor matrix be standardized ?
+	 */
+	public PCA(RowMatrix X, int ncomp, boolean standardize)
+	{
+		this(X, ncomp, standardize, Solver.AUTO);
+	}
+
+	/**
+	 * Ctor for PCA on a row-wise stored descriptor matrix (e.g. an OffHeapMatrix).
+	 * 
+	 * The matrix is copied onto the heap like in {@link #PCA(RowMatrix, int, boolean)}.
+	 * @param X : descriptor matrix (each row is one datapoint)
+	 * @param ncomp : number of components to calculate
+	 * @param standardize : should descriptor matrix be standardized ?
+	 * @param solver : decomposition route
+	 */
+	public PCA(RowMatrix X, int ncomp, boolean standardize, Solver solver)
+	{
+		this(MatrixHelper.copy(X), ncomp, standardize, solver, DEFAULT_OVERSAMPLING, DEFAULT_POWER_ITERATIONS, 4711);
+	}
+
+	/**
+	 * Ctor for randomized PCA on a row-wise stored descriptor matrix (e.g. an OffHeapMatrix).
+	 * 
+	 * The matrix is copied onto the heap like in {@link #PCA(RowMatrix, int, boolean)}.
+	 * @param X : descriptor matrix (each row is one datapoint)
+	 * @param ncomp : number of components to calculate
+	 * @param standardize : should descriptor matrix be standardized ?
+	 * @param oversampling : #random directions sampled in addition to ncomp
+	 * @param powerIterations : #power iterations (sharpen the range for slowly decaying spectra)
+	 * @param seed : seed of the random directions
+	 */
+	public PCA(RowMatrix X, int ncomp, boolean standardize, int oversampling, int powerIterations, long seed)
+	{
+		this(MatrixHelper.copy(X), ncomp, standardize, Solver.RANDOMIZED, oversampling, powerIterations, seed);
+	}
+
+	/**
+	 * @param X : private copy of the descriptor matrix
+	 */
+	private PCA(MMatrix X, int ncomp, boolean standardize, Solver solver, int oversampling, int powerIterations, long seed)
+	{
+		if(oversampling<0 || powerIterations<0)
+			throw new IllegalArgumentException("oversampling and power iterations must not be negative");
+		int max = Math.min(X.getRowDimension(), X.getColumnDimension());
+		if(ncomp<1 || ncomp>max)
+			throw new IllegalArgumentException("number of components must be within 1.."+max);
+		ncomp_           = ncomp;
+		X_               = X;
+		oversampling_    = oversampling;
+		powerIterations_ = powerIterations;
+		seed_            = seed;
+		fit(standardize, solver);
+	}
+
+	private void fit(boolean standardize, Solver solver)
+	{
 		if(standardize)
 			standardize(X_);  
 		else
 			center(X_);
-		calcSVD();
+		solver_ = select(solver, X_.getRowDimension(), X_.getColumnDimension());
+		switch(solver_)
+		{
+			case COVARIANCE:
+				calcCovarianceEVD();
+				break;
+			case GRAM:
+				calcGramEVD();
+				break;
+			case RANDOMIZED:
+				calcRandomizedSVD();
+				break;
+			default:
+				calcSVD();
+		}
+		if(solver_==Solver.RANDOMIZED)
+		{
+			// only the leading eigenvalues are known, the total variance is the squared Frobenius norm
+			double n = X_.normF();
+			totVar_ = n*n;
+		}
+		else
+		{
+			for(int i=0;i<evals.size();i++)
+				totVar_ += evals.get(i);
+		}
+		finish();
+	}
+
+	/**
+	 * resolves AUTO: an eigendecomposition of the smaller cross-product pays off once one side of the
+	 * descriptor matrix is at least SHAPE_RATIO times the other.
+	 */
+	private static Solver select(Solver solver, int nSamples, int nVars)
+	{
+		if(solver!=Solver.AUTO)
+			return solver;
+		if(nSamples>=(long) SHAPE_RATIO*nVars)
+			return Solver.COVARIANCE;
+		if(nVars>=(long) SHAPE_RATIO*nSamples)
+			return Solver.GRAM;
+		return Solver.SVD;
+	}
+
+	/**
+	 * get decomposition route that was used.
+	 * 
+	 * @return solver (never AUTO)
+	 */
+	public Solver getSolver()
+	{
+		return solver_;
 	}
 
 
@@ -69,8 +335,8 @@ public class PCA
 	 */
 	private void standardize(MMatrix X)
 	{
-		ColumnCenterer.apply(X);
-		ColumnScaler.apply(X);
+		standardizer_ = new ColumnStandardizer(true).fit(X);
+		standardizer_.apply(X);
 	}
 
 	/**
@@ -79,7 +345,18 @@ public class PCA
 	 */
 	private void center(MMatrix X)
 	{
-		ColumnCenterer.apply(X);
+		standardizer_ = new ColumnStandardizer(false).fit(X);
+		standardizer_.apply(X);
+	}
+
+	/**
+	 * get the column centering (and scaling) that was applied to the descriptor matrix.
+	 * 
+	 * @return fitted standardizer
+	 */
+	public ColumnStandardizer getStandardizer()
+	{
+		return standardizer_;
 	}
 
 	/**
@@ -128,7 +405,162 @@ public class PCA
 		U  = svd.getU().getMatrix(0,nSamples-1,0,ncomp_-1);
 		V  = svd.getV().getMatrix(0,nVars-1,0,ncomp_-1);
 		T  = new MMatrix( U.times(S) );
+	}
+
+	/**
+	 * calculate loadings from the eigendecomposition of X'*X, scores are T = X*V.
+	 */
+	private void calcCovarianceEVD()
+	{
+		Matrix   C  = CrossProducts.transposeTimes(X_);
+		EigenvalueDecomposition evd = new EigenvalueDecomposition(C);
+		double[] ev = evd.getRealEigenvalues();
+		
+		V = leading(evd.getV(), ev);
+		MatrixHelper.normalizeSigns(V, null);
+		T = new MMatrix( MatrixHelper.times(MatrixHelper.asRowMatrix(X_), V) );
+		U = T.times(inverse(S));
+	}
+
+	/**
+	 * calculate scores from the eigendecomposition of X*X', loadings are V = X'*U*S^-1.
+	 */
+	private void calcGramEVD()
+	{
+		Matrix   G  = CrossProducts.timesTranspose(X_);
+		EigenvalueDecomposition evd = new EigenvalueDecomposition(G);
+		double[] ev = evd.getRealEigenvalues();
+		
+		U = leading(evd.getV(), ev);
+		V = transposeTimes(X_, U).times(inverse(S));
+		MatrixHelper.normalizeSigns(V, U);
+		T = new MMatrix( U.times(S) );
+	}
+
+	/**
+	 * calculate the leading singular triplets with a randomized range finder: the range of X is
+	 * sampled by Y = X*Omega for a p x (ncomp+oversampling) Gaussian Omega, optionally sharpened
+	 * by power iterations Y = X*(X'*Q), and X is decomposed within it as Q'*X = Z*S*W', which
+	 * gives U = Q*Z and V = W.
+	 */
+	private void calcRandomizedSVD()
+	{
+		int    nSamples = X_.getRowDimension();
+		int    nVars    = X_.getColumnDimension();
+		int    l        = Math.min(ncomp_+oversampling_, Math.min(nSamples, nVars));
+		Random rnd      = new Random(seed_);
+		
+		Matrix Omega = new Matrix(nVars,l);
+		for(int i=0;i<nVars;i++)
+			for(int j=0;j<l;j++)
+				Omega.set(i,j,rnd.nextGaussian());
+		
+		RowMatrix X = MatrixHelper.asRowMatrix(X_);
+		Matrix    Q = new QRDecomposition( MatrixHelper.times(X, Omega) ).getQ();
+		for(int it=0;it<powerIterations_;it++)
+		{
+			// re-orthonormalize in between to keep the small directions from being lost to rounding
+			Matrix Z = new QRDecomposition( transposeTimes(X_, Q) ).getQ();
+			Q = new QRDecomposition( MatrixHelper.times(X, Z) ).getQ();
+		}
 		
+		// (Q'*X)' = X'*Q is p x l, Jama's SVD wants at least as many rows as columns
+		SingularValueDecomposition svd = new SingularValueDecomposition( transposeTimes(X_, Q) );
+		double[] d = svd.getSingularValues();
+		S = new Matrix(ncomp_,ncomp_);
+		for(int k=0;k<d.length;k++)
+		{
+			double ev = d[k];
+			if(Math.abs(d[k])<1e-9)
+				ev = 0.0;
+			if(k<ncomp_)
+				S.set(k,k,ev);
+			evals.add(ev*ev);
+		}
+		V = svd.getU().getMatrix(0,nVars-1,0,ncomp_-1);
+		U = Q.times( svd.getV().getMatrix(0,l-1,0,ncomp_-1) );
+		MatrixHelper.normalizeSigns(V, U);
+		T = new MMatrix( U.times(S) );
+	}
+
+	/**
+	 * takes the singular values from the ascending eigenvalues of a cross-product and returns the
+	 * ncomp leading eigenvectors.
+	 */
+	private Matrix leading(Matrix E, double[] ev)
+	{
+		int n = ev.length;
+		S = new Matrix(ncomp_,ncomp_);
+		for(int k=0;k<n;k++)
+		{
+			// Jama returns the eigenvalues of a symmetric matrix in ascending order
+			double d = Math.sqrt(Math.max(0.0, ev[n-1-k]));
+			if(d<1e-9)
+				d = 0.0;
+			if(k<ncomp_)
+				S.set(k,k,d);
+			evals.add(d*d);
+		}
+		int[] idx = new int[ncomp_];
+		for(int k=0;k<ncomp_;k++)
+			idx[k] = n-1-k;
+		return E.getMatrix(0, n-1, idx);
+	}
+
+	/**
+	 * inverts the diagonal matrix of singular values, zero singular values stay zero.
+	 */
+	private static Matrix inverse(Matrix S)
+	{
+		int    n   = S.getRowDimension();
+		Matrix ret = new Matrix(n,n);
+		for(int k=0;k<n;k++)
+		{
+			if(S.get(k,k)!=0.0)
+				ret.set(k,k,1.0/S.get(k,k));
+		}
+		return ret;
+	}
+
+	/**
+	 * computes X'*U in parallel blocks of columns of X.
+	 */
+	private static Matrix transposeTimes(Matrix X, Matrix U)
+	{
+		final double[][] x  = X.getArray();
+		final double[][] u  = U.getArray();
+		final int        N  = X.getRowDimension();
+		final int        p  = X.getColumnDimension();
+		final int        b  = U.getColumnDimension();
+		final Matrix     R  = new Matrix(p,b);
+		final double[][] r  = R.getArray();
+		Parallel.forRange(0, p, Parallel.grain(p, 64), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int i=0;i<N;i++)
+				{
+					double[] xi = x[i];
+					double[] ui = u[i];
+					for(int j=from;j<to;j++)
+					{
+						double   a  = xi[j];
+						double[] rj = r[j];
+						for(int l=0;l<b;l++)
+							rj[l] += a*ui[l];
+					}
+				}
+			}
+		});
+		return R;
+	}
+
+	/**
+	 * calculate reconstruction, residuals and statistics from scores and loadings.
+	 */
+	private void finish()
+	{
 		Xhat = T.times(V.transpose());
 		Xres = Xhat.minus(X_);
 		
@@ -139,6 +571,15 @@ public class PCA
 		TT = (T.transpose()).times(T);
 		
 		calcDModX();
+		
+		// score variances for Hotelling's T^2 of new datapoints
+		int nSamples = X_.getRowDimension();
+		invVar_ = new double[ncomp_];
+		for(int a=0;a<ncomp_;a++)
+		{
+			double var = evals.get(a)/(nSamples-1);
+			invVar_[a] = var>0.0 ? 1.0/var : 0.0;
+		}
 	}
 
 	/**
@@ -165,16 +606,14 @@ public class PCA
 	/**
 	 * calculate goodness of fit for given dimensionality.
 	 * 
-	 * @param dim
+	 * @param dim : at most the number of eigenvalues (see getEval)
 	 * @return goodness of fit
 	 */
 	public double getGoodnessOfFit(int dim)
 	{
-		double s1 = 0.0;
-		for(int i=0;i<evals.size();i++)
-		{
-			s1+=evals.get(i);
-		}
+		if(dim<0 || dim>evals.size())
+			throw new IllegalArgumentException("dimensionality "+dim+" exceeds the "+evals.size()+" eigenvalues of the "+solver_+" solver");
+		double s1 = totVar_;
 		double s2 = 0.0;
 		for(int i=0;i<dim;i++)
 		{
@@ -192,15 +631,7 @@ public class PCA
 	{
 		int R = Xres.getRowDimension();
 		int C = Xres.getColumnDimension();
-		List<Double> es = new Vector<Double>();
-		for(int r=0;r<R;r++)
-		{
-			for(int c=0;c<C;c++)
-			{
-				es.add( Xres.get(r,c));
-			}
-		}
-		double s =  Statistics.var(es);
+		double s =  Statistics.var(new ElementIterator(Xres));
 		s*=(R*C-1);
 		s/=(R-ncomp_-1)*(C-ncomp_);
 		return s;
@@ -230,15 +661,98 @@ public class PCA
 
 	/**
 	 * get value of i-th eigenvalue.
+	 * 
+	 * The SVD, COVARIANCE and GRAM routes know every eigenvalue of the decomposition they compute
+	 * (one per singular value of X, p of X'*X or N of X*X'). The randomized solver only computes the
+	 * leading min(ncomp+oversampling, N, p).
 	 *  
-	 * @param i
-	 * @return
+	 * @param i : index below the number of eigenvalues
+	 * @return eigenvalue
+	 * @throws IllegalArgumentException if the eigenvalue was not computed
 	 */
 	public double getEval(int i)
 	{
+		if(i<0 || i>=evals.size())
+			throw new IllegalArgumentException("eigenvalue "+i+" was not computed, the "+solver_+" solver yields "+evals.size());
 		return evals.get(i);
 	}
 
+	/**
+	 * project new datapoints onto the pca plane.
+	 * 
+	 * The fitted centering (and scaling) and loadings are applied to row blocks in parallel, nothing
+	 * is decomposed and the model is not modified, so one PCA may serve concurrent callers.
+	 * 
+	 * @param Xnew : new datapoints (in rows, with the descriptors of the fitted ones)
+	 * @return scores, DModX and Hotelling's T^2 of the new datapoints
+	 */
+	public Projection transform(Matrix Xnew)
+	{
+		return transform(MatrixHelper.asRowMatrix(Xnew));
+	}
+
+	/**
+	 * project new datapoints stored row-wise (e.g. an OffHeapMatrix) onto the pca plane.
+	 * 
+	 * @param Xnew : new datapoints (in rows, with the descriptors of the fitted ones)
+	 * @return scores, DModX and Hotelling's T^2 of the new datapoints
+	 */
+	public Projection transform(final RowMatrix Xnew)
+	{
+		final int p = X_.getColumnDimension();
+		final int k = ncomp_;
+		final int N = Xnew.getRowDimension();
+		if(Xnew.getColumnDimension()!=p)
+			throw new IllegalArgumentException("matrix has "+Xnew.getColumnDimension()+" columns, PCA was fitted on "+p);
+		
+		final double[]   mn    = standardizer_.getMeans();
+		final double[]   sc    = standardizer_.getScales();
+		final double[][] v     = V.getArray();
+		final double[]   iv    = invVar_;
+		final double     dof   = X_.getRowDimension()-ncomp_-1;
+		final Matrix     Tnew  = new Matrix(N,k);
+		final double[][] t     = Tnew.getArray();
+		final double[]   dmodx = new double[N];
+		final double[]   t2    = new double[N];
+		Parallel.forRange(0, N, Parallel.grain(N, 64), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				double[] row = new double[p];
+				for(int i=from;i<to;i++)
+				{
+					Xnew.getRow(i, row);
+					double[] ti = t[i];
+					for(int j=0;j<p;j++)
+					{
+						double   x  = (row[j]-mn[j])/sc[j];
+						double[] vj = v[j];
+						row[j] = x;
+						for(int a=0;a<k;a++)
+							ti[a] += x*vj[a];
+					}
+					// residual of the reconstruction t*V'
+					double res = 0.0;
+					for(int j=0;j<p;j++)
+					{
+						double   r  = row[j];
+						double[] vj = v[j];
+						for(int a=0;a<k;a++)
+							r -= ti[a]*vj[a];
+						res += r*r;
+					}
+					double h = 0.0;
+					for(int a=0;a<k;a++)
+						h += ti[a]*ti[a]*iv[a];
+					dmodx[i] = res/dof;
+					t2[i]    = h;
+				}
+			}
+		});
+		return new Projection(Tnew, dmodx, t2);
+	}
+
 	/**
 	 * get Matrix of scores (i.e. embeddings/projections of datapoints on pca plane)
 	 * 
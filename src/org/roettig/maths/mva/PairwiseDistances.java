@@ -0,0 +1,442 @@
+package org.roettig.maths.mva;
+
+import java.util.Arrays;
+
+import org.roettig.maths.matrix.ElementPipeline;
+import org.roettig.maths.matrix.PackedDistanceMatrix;
+import org.roettig.maths.util.Parallel;
+
+import Jama.Matrix;
+
+/**
+ * PairwiseDistances computes euclidean distance matrices between the rows of descriptor matrices.
+ *
+ * <pre>
+ * {@code
+ * Matrix D2  = PairwiseDistances.squared(X);        // N x N
+ * Matrix D2t = PairwiseDistances.squared(X, Xtst);  // Ntst x N
+ * }
+ * </pre>
+ *
+ * Other metrics (e.g. Tanimoto distances of Fingerprints) are supported through DistanceMetric,
+ * the datapoints are then compared pairwise in parallel rows.
+ *
+ * Squared euclidean distances are computed as ||x||&sup2;+||y||&sup2;-2x&middot;y with cached row norms. The
+ * dot products are accumulated in cache-sized tiles (over datapoints and descriptors), which are
+ * distributed over the cores. Descriptors are centered on the training means beforehand to limit
+ * cancellation, negative round-off results are clamped to 0 and self distances are exactly 0.
+ *
+ * @author roettig
+ *
+ */
+public class PairwiseDistances
+{
+	/**
+	 * #datapoints per tile side.
+	 */
+	private static final int TILE   = 64;
+
+	/**
+	 * #descriptors per tile.
+	 */
+	private static final int KBLOCK = 256;
+
+	/**
+	 * output layouts: full rectangular, full symmetric (mirrored), packed upper triangle.
+	 */
+	private static final int DENSE     = 0;
+	private static final int SYMMETRIC = 1;
+	private static final int PACKED    = 2;
+
+	/**
+	 * computes squared distances between all rows of X.
+	 *
+	 * @param X : datapoints (rows)
+	 *
+	 * @return symmetric matrix of squared distances
+	 */
+	public static Matrix squared(Matrix X)
+	{
+		double[]   mean = columnMeans(X);
+		double[][] A    = center(X, mean);
+		double[]   nA   = norms(A);
+		int        N    = A.length;
+		Matrix     D    = new Matrix(N,N);
+		compute(A, nA, A, nA, D.getArray(), SYMMETRIC);
+		return D;
+	}
+
+	/**
+	 * computes squared distances between all rows of X into packed storage.
+	 *
+	 * @param X : datapoints (rows)
+	 *
+	 * @return upper triangle of squared distances
+	 */
+	public static PackedDistanceMatrix squaredPacked(Matrix X)
+	{
+		double[][]           A  = center(X, columnMeans(X));
+		double[]             nA = norms(A);
+		PackedDistanceMatrix D  = new PackedDistanceMatrix(A.length);
+		compute(A, nA, A, nA, D.getArray(), PACKED);
+		return D;
+	}
+
+	/**
+	 * computes squared distances between rows of Xtst and rows of X.
+	 *
+	 * @param X : training datapoints (rows)
+	 * @param Xtst : test datapoints (rows)
+	 *
+	 * @return matrix of squared distances with #test rows and #training columns
+	 */
+	public static Matrix squared(Matrix X, Matrix Xtst)
+	{
+		if(X.getColumnDimension()!=Xtst.getColumnDimension())
+			throw new IllegalArgumentException("datapoints have "+Xtst.getColumnDimension()+" descriptors, expected "+X.getColumnDimension());
+		double[]   mean = columnMeans(X);
+		double[][] A    = center(X, mean);
+		double[][] T    = center(Xtst, mean);
+		Matrix     D    = new Matrix(T.length, A.length);
+		compute(T, norms(T), A, norms(A), D.getArray(), DENSE);
+		return D;
+	}
+
+	/**
+	 * computes distances between all rows of X.
+	 *
+	 * @param X : datapoints (rows)
+	 *
+	 * @return symmetric distance matrix
+	 */
+	public static Matrix euclidean(Matrix X)
+	{
+		Matrix D = squared(X);
+		new ElementPipeline(D).sqrt().parallel().applyInPlace();
+		return D;
+	}
+
+	/**
+	 * computes distances between rows of Xtst and rows of X.
+	 *
+	 * @param X : training datapoints (rows)
+	 * @param Xtst : test datapoints (rows)
+	 *
+	 * @return distance matrix with #test rows and #training columns
+	 */
+	public static Matrix euclidean(Matrix X, Matrix Xtst)
+	{
+		Matrix D = squared(X, Xtst);
+		new ElementPipeline(D).sqrt().parallel().applyInPlace();
+		return D;
+	}
+
+	/**
+	 * computes squared distances between all datapoints under a metric.
+	 *
+	 * @param data : datapoints
+	 * @param metric : distance metric (thread-safe)
+	 *
+	 * @return symmetric matrix of squared distances
+	 */
+	public static <T> Matrix squared(final T[] data, final DistanceMetric<T> metric)
+	{
+		final int        N = data.length;
+		final Matrix     D = new Matrix(N,N);
+		final double[][] A = D.getArray();
+		triangleRows(N, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int i=from;i<to;i++)
+				{
+					for(int j=i+1;j<N;j++)
+					{
+						double d = metric.distance(data[i], data[j]);
+						A[i][j] = d*d;
+						A[j][i] = d*d;
+					}
+				}
+			}
+		});
+		return D;
+	}
+
+	/**
+	 * computes squared distances between all datapoints under a metric into packed storage.
+	 *
+	 * @param data : datapoints
+	 * @param metric : distance metric (thread-safe)
+	 *
+	 * @return upper triangle of squared distances
+	 */
+	public static <T> PackedDistanceMatrix squaredPacked(final T[] data, final DistanceMetric<T> metric)
+	{
+		final int                  N = data.length;
+		final PackedDistanceMatrix D = new PackedDistanceMatrix(N);
+		final double[][]           U = D.getArray();
+		triangleRows(N, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int i=from;i<to;i++)
+				{
+					double[] u = U[i];
+					for(int j=i+1;j<N;j++)
+					{
+						double d = metric.distance(data[i], data[j]);
+						u[j-i-1] = d*d;
+					}
+				}
+			}
+		});
+		return D;
+	}
+
+	/**
+	 * runs body on the rows 0..N-1 of a strict upper triangle in parallel. Row i has N-1-i elements,
+	 * so row p is paired with row N-1-p and every pair costs the same N-1 elements.
+	 *
+	 * @param N : #rows
+	 * @param body : loop body, called for single rows
+	 */
+	private static void triangleRows(final int N, final Parallel.Range body)
+	{
+		int P = (N+1)/2;
+		Parallel.forRange(0, P, Parallel.grain(P, 1), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int p=from;p<to;p++)
+				{
+					body.apply(p, p+1);
+					if(N-1-p!=p)
+						body.apply(N-1-p, N-p);
+				}
+			}
+		});
+	}
+
+	/**
+	 * computes squared distances between test and training datapoints under a metric.
+	 *
+	 * @param trn : training datapoints
+	 * @param tst : test datapoints
+	 * @param metric : distance metric (thread-safe)
+	 *
+	 * @return matrix of squared distances with #test rows and #training columns
+	 */
+	public static <T> Matrix squared(final T[] trn, final T[] tst, final DistanceMetric<T> metric)
+	{
+		final int        N = trn.length;
+		final Matrix     D = new Matrix(tst.length, N);
+		final double[][] A = D.getArray();
+		Parallel.forRange(0, tst.length, Parallel.grain(tst.length, 1), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int i=from;i<to;i++)
+				{
+					double[] row = A[i];
+					for(int j=0;j<N;j++)
+					{
+						double d = metric.distance(tst[i], trn[j]);
+						row[j] = d*d;
+					}
+				}
+			}
+		});
+		return D;
+	}
+
+	/**
+	 * Reference holds centered training datapoints and their norms for repeated distance queries.
+	 */
+	static class Reference
+	{
+		private double[]   mean;
+		private double[][] A;
+		private double[]   nA;
+
+		Reference(Matrix X)
+		{
+			mean = columnMeans(X);
+			A    = center(X, mean);
+			nA   = norms(A);
+		}
+
+		/**
+		 * fills D[i-r0][j] with the squared distance between row i of Xtst and training datapoint j.
+		 *
+		 * @param Xtst : test datapoints
+		 * @param r0 : first test row (inclusive)
+		 * @param r1 : last test row (exclusive)
+		 * @param D : at least r1-r0 rows with #training columns
+		 */
+		void squared(Matrix Xtst, int r0, int r1, double[][] D)
+		{
+			int K = mean.length;
+			if(Xtst.getColumnDimension()!=K)
+				throw new IllegalArgumentException("datapoints have "+Xtst.getColumnDimension()+" descriptors, expected "+K);
+			double[][] X  = Xtst.getArray();
+			double[][] T  = new double[r1-r0][K];
+			for(int i=r0;i<r1;i++)
+				for(int k=0;k<K;k++)
+					T[i-r0][k] = X[i][k]-mean[k];
+			double[]   nT  = norms(T);
+			double[]   acc = new double[TILE*TILE];
+			for(int j0=0;j0<A.length;j0+=TILE)
+			{
+				for(int i0=0;i0<T.length;i0+=TILE)
+					tile(T, nT, A, nA, D, i0, Math.min(T.length, i0+TILE), j0, Math.min(A.length, j0+TILE), DENSE, acc);
+			}
+		}
+	}
+
+	/**
+	 * fills D[i][j] with the squared distance between T[i] and A[j].
+	 *
+	 * For SYMMETRIC and PACKED layouts (T==A) only tiles on and above the diagonal are computed,
+	 * they are mirrored into D or stored as D[i][j-i-1] respectively.
+	 */
+	private static void compute(final double[][] T, final double[] nT, final double[][] A, final double[] nA, final double[][] D, final int layout)
+	{
+		final int ti = (T.length+TILE-1)/TILE;
+		final int tj = (A.length+TILE-1)/TILE;
+		final int ntiles = ti*tj;
+		Parallel.forRange(0, ntiles, Parallel.grain(ntiles, 1), new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				double[] acc = new double[TILE*TILE];
+				for(int t=from;t<to;t++)
+				{
+					int bi = t/tj;
+					int bj = t%tj;
+					if(layout!=DENSE && bj<bi)
+						continue;
+					tile(T, nT, A, nA, D, bi*TILE, Math.min(T.length, (bi+1)*TILE), bj*TILE, Math.min(A.length, (bj+1)*TILE), layout, acc);
+				}
+			}
+		});
+	}
+
+	private static void tile(double[][] T, double[] nT, double[][] A, double[] nA, double[][] D, int i0, int i1, int j0, int j1, int layout, double[] acc)
+	{
+		int K  = A.length>0 ? A[0].length : 0;
+		int nj = j1-j0;
+		Arrays.fill(acc, 0, (i1-i0)*nj, 0.0);
+
+		for(int k0=0;k0<K;k0+=KBLOCK)
+		{
+			int k1 = Math.min(K, k0+KBLOCK);
+			for(int i=i0;i<i1;i++)
+			{
+				double[] t   = T[i];
+				int      off = (i-i0)*nj;
+				int      j   = j0;
+				// four dot products at once to keep several independent accumulators busy
+				for(;j+3<j1;j+=4)
+				{
+					double[] a0 = A[j];
+					double[] a1 = A[j+1];
+					double[] a2 = A[j+2];
+					double[] a3 = A[j+3];
+					double   s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+					for(int k=k0;k<k1;k++)
+					{
+						double x = t[k];
+						s0 += x*a0[k];
+						s1 += x*a1[k];
+						s2 += x*a2[k];
+						s3 += x*a3[k];
+					}
+					acc[off+j-j0]   += s0;
+					acc[off+j-j0+1] += s1;
+					acc[off+j-j0+2] += s2;
+					acc[off+j-j0+3] += s3;
+				}
+				for(;j<j1;j++)
+				{
+					double[] a = A[j];
+					double   s = 0.0;
+					for(int k=k0;k<k1;k++)
+						s += t[k]*a[k];
+					acc[off+j-j0] += s;
+				}
+			}
+		}
+
+		for(int i=i0;i<i1;i++)
+		{
+			double[] row = D[i];
+			int      off = (i-i0)*nj;
+			for(int j=j0;j<j1;j++)
+			{
+				double d = nT[i]+nA[j]-2.0*acc[off+j-j0];
+				if(d<0.0 || (layout!=DENSE && i==j))
+					d = 0.0;
+				if(layout==PACKED)
+				{
+					if(j>i)
+						row[j-i-1] = d;
+					continue;
+				}
+				row[j] = d;
+				if(layout==SYMMETRIC)
+					D[j][i] = d;
+			}
+		}
+	}
+
+	private static double[] columnMeans(Matrix X)
+	{
+		double[][] A    = X.getArray();
+		int        N    = X.getRowDimension();
+		int        K    = X.getColumnDimension();
+		double[]   mean = new double[K];
+		for(int i=0;i<N;i++)
+		{
+			double[] row = A[i];
+			for(int k=0;k<K;k++)
+				mean[k] += row[k];
+		}
+		for(int k=0;k<K;k++)
+			mean[k] /= Math.max(1,N);
+		return mean;
+	}
+
+	private static double[][] center(Matrix X, double[] mean)
+	{
+		double[][] A   = X.getArray();
+		int        N   = X.getRowDimension();
+		int        K   = X.getColumnDimension();
+		double[][] ret = new double[N][K];
+		for(int i=0;i<N;i++)
+		{
+			double[] src = A[i];
+			double[] dst = ret[i];
+			for(int k=0;k<K;k++)
+				dst[k] = src[k]-mean[k];
+		}
+		return ret;
+	}
+
+	private static double[] norms(double[][] A)
+	{
+		double[] ret = new double[A.length];
+		for(int i=0;i<A.length;i++)
+		{
+			double s = 0.0;
+			for(double d: A[i])
+				s += d*d;
+			ret[i] = s;
+		}
+		return ret;
+	}
+}
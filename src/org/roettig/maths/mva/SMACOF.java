@@ -0,0 +1,300 @@
+package org.roettig.maths.mva;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.roettig.maths.matrix.MatrixHelper;
+import org.roettig.maths.matrix.PackedDistanceMatrix;
+import org.roettig.maths.matrix.RowMatrix;
+import org.roettig.maths.util.Parallel;
+
+import Jama.Matrix;
+
+/**
+ *
+ * SMACOF (scaling by majorizing a complicated function) metric MDS by stress majorization.
+ *
+ * <pre>
+ * {@code
+ *
+ * Matrix D2 = MDS.computeSquaredDistanceMatrix(fps, DistanceMetrics.TANIMOTO);
+ *
+ * MDS mds = new MDS(D2, 2);
+ * mds.compute();
+ *
+ * SMACOF smacof = new SMACOF(D2, mds);   // warm start from classical MDS
+ * smacof.compute();
+ * Matrix X = smacof.getX();
+ *
+ * }
+ *
+ * </pre>
+ *
+ * Each iteration applies the Guttman transform X = 1/N*B(X)*X, which never increases the raw
+ * stress sum_{i<j} (delta_ij-d_ij)^2, with delta the dissimilarities (square roots of D2) and d the
+ * distances in the embedding. The dissimilarities are taken once from D2 and kept as a packed upper
+ * triangle (about N^2/2 doubles). Rows of the new configuration are computed in parallel blocks.
+ * Iteration stops when the relative stress decrease drops below the tolerance or after the
+ * maximal number of iterations. Starting from the classical solution typically needs far fewer
+ * iterations than a random configuration.
+ *
+ * @author roettig
+ *
+ */
+public class SMACOF
+{
+	public static Logger logger = Logger.getLogger("org.roettig.maths.mva.smacof");
+
+	private RowMatrix            D2;
+	private PackedDistanceMatrix delta;
+	private Matrix               X;
+	private double               tol     = 1e-6;
+	private int                  maxIter = 300;
+	private double               deltaSq;
+	private double[]             stress  = new double[0];
+
+	/**
+	 * Ctor for SMACOF.
+	 *
+	 * @param _D2 : Matrix of squared dissimilarities between all datapoints
+	 * @param X0 : initial configuration (datapoints in rows), is not modified
+	 */
+	public SMACOF(Matrix _D2, Matrix X0)
+	{
+		this(MatrixHelper.asRowMatrix(_D2), X0);
+	}
+
+	/**
+	 * Ctor for SMACOF on a row-wise stored dissimilarity matrix (e.g. a PackedDistanceMatrix).
+	 *
+	 * @param _D2 : Matrix of squared dissimilarities between all datapoints
+	 * @param X0 : initial configuration (datapoints in rows), is not modified
+	 */
+	public SMACOF(RowMatrix _D2, Matrix X0)
+	{
+		if(X0.getRowDimension()!=_D2.getRowDimension())
+			throw new IllegalArgumentException("initial configuration has "+X0.getRowDimension()+" datapoints, expected "+_D2.getRowDimension());
+		D2 = _D2;
+		X  = X0.copy();
+	}
+
+	/**
+	 * Ctor for SMACOF started from the embedding of a classical MDS.
+	 *
+	 * @param _D2 : Matrix of squared dissimilarities the MDS was computed on
+	 * @param mds : computed classical MDS
+	 */
+	public SMACOF(Matrix _D2, MDS mds)
+	{
+		this(_D2, mds.getX());
+	}
+
+	/**
+	 * Ctor for SMACOF started from the embedding of a classical MDS.
+	 *
+	 * @param _D2 : Matrix of squared dissimilarities the MDS was computed on
+	 * @param mds : computed classical MDS
+	 */
+	public SMACOF(RowMatrix _D2, MDS mds)
+	{
+		this(_D2, mds.getX());
+	}
+
+	/**
+	 * set convergence tolerance.
+	 *
+	 * @param tol : minimal relative decrease of stress per iteration
+	 */
+	public void setTolerance(double tol)
+	{
+		this.tol = tol;
+	}
+
+	/**
+	 * set maximal number of iterations.
+	 *
+	 * @param maxIter : #iterations
+	 */
+	public void setMaxIterations(int maxIter)
+	{
+		this.maxIter = maxIter;
+	}
+
+	/**
+	 * compute SMACOF.
+	 *
+	 */
+	public void compute()
+	{
+		if(delta==null)
+			computeDissimilarities();
+		double[] hist = new double[maxIter+1];
+		int      it   = 0;
+		double   prev = Double.POSITIVE_INFINITY;
+		while(true)
+		{
+			Matrix Xn = new Matrix(X.getRowDimension(), X.getColumnDimension());
+			double s  = guttman(X, Xn);
+			hist[it]  = normalized(s);
+			logger.info("SMACOF it="+it+" stress="+hist[it]);
+			if(it==maxIter || (it>0 && prev-s<=tol*prev))
+				break;
+			prev = s;
+			X    = Xn;
+			it++;
+		}
+		stress = Arrays.copyOf(hist, it+1);
+	}
+
+	/**
+	 * computes the dissimilarities delta (square roots of D2) and sum_{i<j} delta_ij^2, blocks of rows
+	 * in parallel.
+	 */
+	private void computeDissimilarities()
+	{
+		final int                  N       = D2.getRowDimension();
+		final PackedDistanceMatrix P       = new PackedDistanceMatrix(N);
+		final double[][]           U       = P.getArray();
+		final int                  G       = Parallel.grain(N, 16);
+		final int                  nblocks = Math.max(1, (N+G-1)/G);
+		final double[]             bsum    = new double[nblocks];
+		Parallel.forRange(0, nblocks, 1, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				double[] row = new double[N];
+				for(int b=from;b<to;b++)
+				{
+					double sum = 0.0;
+					for(int i=b*G;i<Math.min(N, (b+1)*G);i++)
+					{
+						D2.getRow(i, row);
+						double[] u = U[i];
+						for(int j=i+1;j<N;j++)
+						{
+							double d2 = Math.max(0.0, row[j]);
+							u[j-i-1] = Math.sqrt(d2);
+							sum     += d2;
+						}
+					}
+					bsum[b] = sum;
+				}
+			}
+		});
+		deltaSq = 0.0;
+		for(int b=0;b<nblocks;b++)
+			deltaSq += bsum[b];
+		delta = P;
+	}
+
+	/**
+	 * computes the Guttman transform of X into Xn.
+	 *
+	 * @return raw stress of X
+	 */
+	private double guttman(Matrix Xc, Matrix Xn)
+	{
+		final int        N  = D2.getRowDimension();
+		final int        d  = Xc.getColumnDimension();
+		final double[][] x  = Xc.getArray();
+		final double[][] xn = Xn.getArray();
+		final int        G  = Parallel.grain(N, 16);
+		final int        nblocks = Math.max(1, (N+G-1)/G);
+		final double[]   bstress = new double[nblocks];
+		Parallel.forRange(0, nblocks, 1, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				double[] row = new double[N];
+				for(int b=from;b<to;b++)
+				{
+					double st = 0.0;
+					for(int i=b*G;i<Math.min(N, (b+1)*G);i++)
+					{
+						delta.getRow(i, row);
+						double[] xi = x[i];
+						double[] yi = xn[i];
+						for(int j=0;j<N;j++)
+						{
+							if(j==i)
+								continue;
+							double[] xj    = x[j];
+							double   dist2 = 0.0;
+							for(int l=0;l<d;l++)
+							{
+								double t = xi[l]-xj[l];
+								dist2 += t*t;
+							}
+							double dist = Math.sqrt(dist2);
+							double dij  = row[j];
+							st += (dij-dist)*(dij-dist);
+							if(dist>0.0)
+							{
+								double r = dij/dist;
+								for(int l=0;l<d;l++)
+									yi[l] += r*(xi[l]-xj[l]);
+							}
+						}
+						for(int l=0;l<d;l++)
+							yi[l] /= N;
+					}
+					bstress[b] = st;
+				}
+			}
+		});
+		double st = 0.0;
+		for(int b=0;b<nblocks;b++)
+			st += bstress[b];
+		// every pair was visited twice
+		return 0.5*st;
+	}
+
+	private double normalized(double raw)
+	{
+		return deltaSq>0.0 ? Math.sqrt(raw/deltaSq) : 0.0;
+	}
+
+	/**
+	 * get configuration.
+	 *
+	 * @return Matrix with coordinates (datapoints in rows)
+	 */
+	public Matrix getX()
+	{
+		return X;
+	}
+
+	/**
+	 * get normalized stress of the final configuration, i.e. the square root of the raw stress
+	 * divided by the sum of squared dissimilarities (not Kruskal's stress-1, which divides by the sum
+	 * of squared embedding distances).
+	 *
+	 * @return sqrt(sum (delta-d)^2 / sum delta^2)
+	 */
+	public double getStress()
+	{
+		return stress.length>0 ? stress[stress.length-1] : Double.NaN;
+	}
+
+	/**
+	 * get normalized stress of every iteration (the first entry belongs to the initial configuration).
+	 *
+	 * @return stress history
+	 */
+	public double[] getStressHistory()
+	{
+		return stress.clone();
+	}
+
+	/**
+	 * get number of Guttman transforms applied.
+	 *
+	 * @return #iterations
+	 */
+	public int getIterations()
+	{
+		return Math.max(0, stress.length-1);
+	}
+}
@@ -9,7 +9,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
+import org.roettig.maths.util.DoubleView;
 import org.roettig.maths.util.Pair;
+import org.roettig.maths.util.Parallel;
 
 public class Statistics
 {
@@ -40,6 +42,103 @@ public class Statistics
 			return String.format("TP: %3d TN: %3d FP: %3d FN: %3d N:%3d",TP,TN,FP,FN,(TP+TN+FP+FN));
 		}
 	}
+
+	/**
+	 * Moments accumulates count, mean and sum of squared deviations in a single pass
+	 * (Welford's update); partial accumulators can be merged (Chan et al.).
+	 */
+	public static class Moments
+	{
+		private long   n;
+		private double mean;
+		private double m2;
+
+		/**
+		 * adds a value.
+		 * 
+		 * @param x : value
+		 */
+		public void add(double x)
+		{
+			n++;
+			double d = x-mean;
+			mean += d/n;
+			m2   += d*(x-mean);
+		}
+
+		/**
+		 * merges the values accumulated in o into this accumulator.
+		 * 
+		 * @param o : other accumulator
+		 */
+		public void merge(Moments o)
+		{
+			if(o.n==0)
+				return;
+			if(n==0)
+			{
+				n    = o.n;
+				mean = o.mean;
+				m2   = o.m2;
+				return;
+			}
+			long   N = n+o.n;
+			double d = o.mean-mean;
+			mean += d*o.n/N;
+			m2   += o.m2 + d*d*((double) n*o.n/N);
+			n     = N;
+		}
+
+		/**
+		 * get number of values.
+		 * 
+		 * @return count
+		 */
+		public long getN()
+		{
+			return n;
+		}
+
+		/**
+		 * get mean of values.
+		 * 
+		 * @return mean
+		 */
+		public double getMean()
+		{
+			return n>0 ? mean : Double.NaN;
+		}
+
+		/**
+		 * get bias-corrected sample variance of values.
+		 * 
+		 * @return variance
+		 */
+		public double getVar()
+		{
+			return m2/(n-1);
+		}
+
+		/**
+		 * get standard deviation of values.
+		 * 
+		 * @return std
+		 */
+		public double getStd()
+		{
+			return Math.sqrt(getVar());
+		}
+
+		public String toString()
+		{
+			return String.format("N: %d mean: %f var: %f",n,getMean(),getVar());
+		}
+	}
+
+	/**
+	 * number of elements per chunk in parallel reductions.
+	 */
+	private static final int CHUNK = 1<<16;
 	
 	/** 
 	 * computes the prediction accuracy.  
@@ -104,18 +203,12 @@ public class Statistics
 	 */
 	public static double var(Iterable<? extends Number> v)
 	{
-		double s  = 0.0;
-		double mn = mean(v);
-		
-		int N = 0;
+		Moments m = new Moments();
 		for(Number e:v)
 		{
-			s+=Math.pow(e.doubleValue()-mn,2);
-			N++;
+			m.add(e.doubleValue());
 		}
-		s/=N-1;
-		
-		return s;
+		return m.getVar();
 	}
 
 	/** 
@@ -130,6 +223,195 @@ public class Statistics
 		return Math.sqrt(var(v));
 	}
 
+	/** 
+	 * accumulates the moments of v[from..to) in a single pass. 
+	 * 
+	 * @param v : array with values
+	 * @param from : first index (inclusive)
+	 * @param to : last index (exclusive)
+	 *
+	 * @return moments
+	 */
+	public static Moments moments(double[] v, int from, int to)
+	{
+		Moments m = new Moments();
+		for(int i=from;i<to;i++)
+		{
+			m.add(v[i]);
+		}
+		return m;
+	}
+
+	/** 
+	 * accumulates the moments of v in a single pass. 
+	 * 
+	 * @param v : array with values
+	 * @param parallel : merge per-chunk accumulators computed in parallel
+	 *
+	 * @return moments
+	 */
+	public static Moments moments(final double[] v, boolean parallel)
+	{
+		final int N = v.length;
+		if(!parallel || N<=CHUNK)
+			return moments(v, 0, N);
+
+		final Moments[] parts = new Moments[(N+CHUNK-1)/CHUNK];
+		Parallel.forRange(0, parts.length, 1, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				for(int k=from;k<to;k++)
+					parts[k] = moments(v, k*CHUNK, Math.min(N, (k+1)*CHUNK));
+			}
+		});
+		Moments m = new Moments();
+		for(Moments p: parts)
+			m.merge(p);
+		return m;
+	}
+
+	/** 
+	 * accumulates the moments of the elements of a view in a single pass. 
+	 * 
+	 * @param v : view with values
+	 *
+	 * @return moments
+	 */
+	public static Moments moments(DoubleView v)
+	{
+		Moments m = new Moments();
+		int     N = v.size();
+		for(int i=0;i<N;i++)
+		{
+			m.add(v.get(i));
+		}
+		return m;
+	}
+
+	/** 
+	 * computes the mean of an array. 
+	 * 
+	 * @param v : array with values
+	 *
+	 * @return value of mean(v)
+	 */
+	public static double mean(double[] v)
+	{
+		double s = 0.0;
+		for(int i=0;i<v.length;i++)
+		{
+			s+=v[i];
+		}
+		return s/v.length;
+	}
+
+	/** 
+	 * computes the mean of an array. 
+	 * 
+	 * @param v : array with values
+	 * @param parallel : sum chunks in parallel
+	 *
+	 * @return value of mean(v)
+	 */
+	public static double mean(double[] v, boolean parallel)
+	{
+		return parallel ? moments(v, true).getMean() : mean(v);
+	}
+
+	/** 
+	 * computes the mean of the elements of a view. 
+	 * 
+	 * @param v : view with values
+	 *
+	 * @return value of mean(v)
+	 */
+	public static double mean(DoubleView v)
+	{
+		double s = 0.0;
+		int    N = v.size();
+		for(int i=0;i<N;i++)
+		{
+			s+=v.get(i);
+		}
+		return s/N;
+	}
+
+	/** 
+	 * computes the bias-corrected sample variance of an array in a single pass. 
+	 * 
+	 * @param v : array with values
+	 *
+	 * @return value of var(v)
+	 */
+	public static double var(double[] v)
+	{
+		return moments(v, 0, v.length).getVar();
+	}
+
+	/** 
+	 * computes the bias-corrected sample variance of an array in a single pass. 
+	 * 
+	 * @param v : array with values
+	 * @param parallel : merge per-chunk accumulators computed in parallel
+	 *
+	 * @return value of var(v)
+	 */
+	public static double var(double[] v, boolean parallel)
+	{
+		return moments(v, parallel).getVar();
+	}
+
+	/** 
+	 * computes the bias-corrected sample variance of the elements of a view in a single pass. 
+	 * 
+	 * @param v : view with values
+	 *
+	 * @return value of var(v)
+	 */
+	public static double var(DoubleView v)
+	{
+		return moments(v).getVar();
+	}
+
+	/** 
+	 * computes the standard deviation of an array. 
+	 * 
+	 * @param v : array with values
+	 *
+	 * @return value of std(v)
+	 */
+	public static double std(double[] v)
+	{
+		return Math.sqrt(var(v));
+	}
+
+	/** 
+	 * computes the standard deviation of an array. 
+	 * 
+	 * @param v : array with values
+	 * @param parallel : merge per-chunk accumulators computed in parallel
+	 *
+	 * @return value of std(v)
+	 */
+	public static double std(double[] v, boolean parallel)
+	{
+		return Math.sqrt(var(v, parallel));
+	}
+
+	/** 
+	 * computes the standard deviation of the elements of a view. 
+	 * 
+	 * @param v : view with values
+	 *
+	 * @return value of std(v)
+	 */
+	public static double std(DoubleView v)
+	{
+		return Math.sqrt(var(v));
+	}
+
 	/** 
 	 * computes coefficient of determination (q^2) between yt and yp.
 	 *
@@ -3,8 +3,13 @@
  */
 package org.roettig.maths.test;
 
+import java.util.PrimitiveIterator;
+
+import org.roettig.maths.matrix.ColumnIterator;
+import org.roettig.maths.matrix.ElementIterator;
 import org.roettig.maths.matrix.MMatrix;
 import org.roettig.maths.matrix.MatrixHelper;
+import org.roettig.maths.util.DoubleView;
 
 import Jama.Matrix;
 
@@ -36,4 +41,41 @@ public class TestIterator extends TestCase
 		assertEquals("",D.get(1,1),15.0);
 		assertEquals("",D.get(2,2),24.0);
 	}
-}
\ No newline at end of file
+
+	public void testViews() throws Exception
+	{
+		MMatrix m = new MMatrix(3,4,0.0);
+		for(int i=0;i<3;i++)
+			for(int j=0;j<4;j++)
+				m.set(i, j, 4*i+j);
+
+		ColumnIterator col = m.columnIterator(1);
+		assertEquals(3, col.size());
+		assertEquals(1.0+5.0+9.0, col.stream().sum(), 1e-12);
+		PrimitiveIterator.OfDouble it = m.rowIterator(2).iterator();
+		double i = 8.0;
+		while(it.hasNext())
+		{
+			assertEquals(i, it.nextDouble(), 0.0);
+			i+=1.0;
+		}
+		assertEquals(12.0, i, 0.0);
+		assertEquals(0.0+5.0+10.0, m.diagonalIterator().stream().sum(), 1e-12);
+
+		i = 0.0;
+		for(Double d: new ElementIterator(m))
+		{
+			assertEquals(i, d, 0.0);
+			i+=1.0;
+		}
+		assertEquals(66.0, new ElementIterator(m).stream().parallel().sum(), 1e-12);
+
+		// views read the matrix in place
+		m.set(1, 1, 100.0);
+		assertEquals(100.0, col.get(1), 0.0);
+
+		double[] a = { 1.0, 2.0, 3.0, 4.0, 5.0, 6.0 };
+		DoubleView v = DoubleView.of(a, 1, 2, 3);
+		assertEquals(2.0+4.0+6.0, v.stream().sum(), 0.0);
+	}
+}
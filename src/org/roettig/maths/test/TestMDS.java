@@ -4,13 +4,34 @@
 package org.roettig.maths.test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 
+import org.roettig.maths.matrix.ColumnApplicator;
 import org.roettig.maths.matrix.DiagonalIterator;
+import org.roettig.maths.matrix.ElementApplicator;
+import org.roettig.maths.matrix.ElementFunctor;
 import org.roettig.maths.matrix.ElementIterator;
+import org.roettig.maths.matrix.Functors;
 import org.roettig.maths.matrix.MMatrix;
+import org.roettig.maths.matrix.MatrixHelper;
+import org.roettig.maths.matrix.OffHeapMatrix;
+import org.roettig.maths.matrix.PackedDistanceMatrix;
+import org.roettig.maths.matrix.ParallelElementApplicator;
+import org.roettig.maths.matrix.RowApplicator;
+import org.roettig.maths.matrix.RowFunctor;
+import org.roettig.maths.matrix.RowMatrix;
+import org.roettig.maths.matrix.TruncatedEigenDecomposition;
+import org.roettig.maths.mva.DistanceMetrics;
+import org.roettig.maths.mva.Fingerprint;
+import org.roettig.maths.mva.LandmarkMDS;
 import org.roettig.maths.mva.MDS;
+import org.roettig.maths.mva.PairwiseDistances;
+import org.roettig.maths.mva.SMACOF;
 
+import Jama.EigenvalueDecomposition;
 import Jama.Matrix;
+import Jama.QRDecomposition;
 import junit.framework.TestCase;
 
 /**
@@ -57,4 +78,447 @@ public class TestMDS extends TestCase
 		assertEquals(E2.get(0,1),12.00, 1e-2);
 
 	}
+
+	public void testOffHeapMDS() throws IOException
+	{
+		Matrix X  = MMatrix.load(this.getClass().getResource("/data/uk.dat").getFile());
+		Matrix D2 = MDS.computeSquaredDistanceMatrix(X);
+		MDS mds1 = new MDS(D2);
+		mds1.compute();
+		MDS mds2 = new MDS(OffHeapMatrix.fromMatrix(D2));
+		mds2.compute();
+		assertEquals(mds1.getDim(), mds2.getDim());
+		assertEquals(true, new MMatrix(mds1.embed(D2)).equalsEps(mds2.embed(D2), 1e-6));
+	}
+
+	public void testPairwiseDistances()
+	{
+		Random rnd  = new Random(11);
+		Matrix X    = new Matrix(150, 300);
+		Matrix Xtst = new Matrix(70, 300);
+		for(int i=0;i<150;i++)
+			for(int k=0;k<300;k++)
+				X.set(i, k, 100+rnd.nextGaussian());
+		for(int i=0;i<70;i++)
+			for(int k=0;k<300;k++)
+				Xtst.set(i, k, 100+rnd.nextGaussian());
+
+		Matrix D2 = PairwiseDistances.squared(X);
+		for(int i=0;i<150;i++)
+		{
+			assertEquals(0.0, D2.get(i,i), 0.0);
+			for(int j=0;j<150;j++)
+			{
+				assertEquals(naive(X, i, X, j), D2.get(i,j), 1e-9);
+				assertEquals(D2.get(j,i), D2.get(i,j), 0.0);
+			}
+		}
+
+		Matrix D2t = PairwiseDistances.squared(X, Xtst);
+		Matrix Dt  = MDS.computeDistanceMatrix(X, Xtst);
+		assertEquals(70, D2t.getRowDimension());
+		assertEquals(150, D2t.getColumnDimension());
+		for(int i=0;i<70;i++)
+		{
+			for(int j=0;j<150;j++)
+			{
+				assertEquals(naive(Xtst, i, X, j), D2t.get(i,j), 1e-9);
+				assertEquals(Math.sqrt(D2t.get(i,j)), Dt.get(i,j), 0.0);
+			}
+		}
+	}
+
+	public void testPackedMDS() throws IOException
+	{
+		Matrix X  = MMatrix.load(this.getClass().getResource("/data/uk.dat").getFile());
+		Matrix D2 = MDS.computeSquaredDistanceMatrix(X);
+		PackedDistanceMatrix P = PairwiseDistances.squaredPacked(X);
+		assertEquals(true, new MMatrix(D2).equalsEps(P.toMMatrix(), 0.0));
+		assertEquals(true, P.toMMatrix().equalsEps(PackedDistanceMatrix.fromMatrix(D2).toMMatrix(), 0.0));
+		double[] row = new double[11];
+		P.getRow(4, row);
+		for(int j=0;j<11;j++)
+			assertEquals(D2.get(4,j), row[j], 0.0);
+
+		MDS mds1 = new MDS(D2);
+		mds1.compute();
+		MDS mds2 = new MDS(P);
+		mds2.compute();
+		assertEquals(mds1.getDim(), mds2.getDim());
+		assertEquals(true, new MMatrix(mds1.embed(D2)).equalsEps(mds2.embed(P), 1e-9));
+
+		// row-wise applicators keep the packed matrix symmetric
+		new ElementApplicator(Functors.SQRT).apply(P);
+		assertEquals(Math.sqrt(D2.get(7,2)), P.get(2,7), 0.0);
+		assertEquals(Math.sqrt(D2.get(7,2)), P.get(7,2), 0.0);
+
+		// in parallel tiles every stored element is transformed once, with upper triangle indices
+		ElementFunctor f = new ElementFunctor()
+		{
+			@Override
+			public double calculate(int i, int j, double d)
+			{
+				assertTrue(i<j);
+				return d*d+1.0;
+			}
+		};
+		ParallelElementApplicator pa = new ParallelElementApplicator(f);
+		pa.setThreshold(0);
+		pa.apply(P);
+		new ColumnApplicator(f).apply(P);
+		for(int i=0;i<11;i++)
+			for(int j=0;j<11;j++)
+			{
+				double e = i==j ? 0.0 : (D2.get(i,j)+1.0)*(D2.get(i,j)+1.0)+1.0;
+				assertEquals(e, P.get(i,j), 1e-12*e);
+			}
+
+		try
+		{
+			new ElementApplicator(new RowFunctor()
+			{
+				@Override
+				public void calculate(int r, double[] row)
+				{
+				}
+			}).apply(P);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+		try
+		{
+			new RowApplicator(Functors.SQRT).apply(P, 3);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+		try
+		{
+			new ColumnApplicator(Functors.SQRT).apply(P, 3);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+
+	public void testDoubleCentering() throws IOException
+	{
+		Matrix X  = MMatrix.load(this.getClass().getResource("/data/uk.dat").getFile());
+		Matrix D2 = MDS.computeSquaredDistanceMatrix(X);
+		int    N  = D2.getRowDimension();
+		Matrix H  = Matrix.identity(N,N).minus(new Matrix(N,N,1.0/N));
+		Matrix B  = H.times(D2).times(H).times(-0.5);
+		MDS mds = new MDS(D2);
+		mds.compute();
+		assertEquals(true, new MMatrix(B).equalsEps(mds.getGramian(), 1e-6));
+	}
+
+	public void testTruncatedMDS()
+	{
+		Random rnd = new Random(14);
+		Matrix X   = new Matrix(300, 6);
+		for(int i=0;i<300;i++)
+			for(int k=0;k<6;k++)
+				X.set(i, k, rnd.nextGaussian()*(k<3 ? 10.0/(k+1) : 0.1));
+		Matrix D2 = PairwiseDistances.squared(X);
+
+		MDS full = new MDS(D2);
+		full.compute();
+		MDS trunc = new MDS(PackedDistanceMatrix.fromMatrix(D2), 3);
+		trunc.compute();
+		assertEquals(3, trunc.getDim());
+
+		Matrix E1 = full.embed(D2).getMatrix(0, 299, 0, 2);
+		Matrix E2 = trunc.embed(D2);
+		assertEquals(true, new MMatrix(E1).equalsEps(E2, 1e-6));
+		assertEquals(true, new MMatrix(full.getGramian()).equalsEps(trunc.getGramian(), 1e-8));
+
+		TruncatedEigenDecomposition evd = new TruncatedEigenDecomposition(full.getGramian(), 2);
+		double[] ev = new EigenvalueDecomposition(full.getGramian()).getRealEigenvalues();
+		Arrays.sort(ev);
+		assertEquals(ev[299], evd.getRealEigenvalues()[0], 1e-8*ev[299]);
+		assertEquals(ev[298], evd.getRealEigenvalues()[1], 1e-8*ev[299]);
+
+		// negative eigenvalues of larger magnitude than the leading positive ones
+		Matrix Q = new QRDecomposition(X.getMatrix(0, 5, 0, 5).plus(Matrix.identity(6, 6).times(20.0))).getQ();
+		Matrix L = new Matrix(new double[][]{{-10,0,0,0,0,0},{0,-9,0,0,0,0},{0,0,5,0,0,0},{0,0,0,3,0,0},{0,0,0,0,1,0},{0,0,0,0,0,0.5}});
+		Matrix A = Q.times(L).times(Q.transpose());
+		A = A.plus(A.transpose()).times(0.5);
+		evd = new TruncatedEigenDecomposition(TruncatedEigenDecomposition.operator(A), 2, 1, new Random(15));
+		assertEquals(true, evd.isConverged());
+		assertEquals(5.0, evd.getRealEigenvalues()[0], 1e-8);
+		assertEquals(3.0, evd.getRealEigenvalues()[1], 1e-8);
+		assertTrue(TruncatedEigenDecomposition.gershgorin(MatrixHelper.asRowMatrix(A))<=-10.0);
+	}
+
+	public void testLandmarkMDS()
+	{
+		Random rnd = new Random(15);
+		Matrix X   = new Matrix(3000, 3);
+		for(int i=0;i<3000;i++)
+			for(int k=0;k<3;k++)
+				X.set(i, k, rnd.nextGaussian()*(3-k));
+
+		for(LandmarkMDS.Selection sel: LandmarkMDS.Selection.values())
+		{
+			LandmarkMDS lmds = new LandmarkMDS(X, 50, sel, 1);
+			lmds.compute();
+			assertEquals(3, lmds.getDim());
+			assertEquals(50, lmds.getLandmarks().length);
+			Matrix E = lmds.getX();
+			assertEquals(3000, E.getRowDimension());
+			// euclidean data is recovered up to rotation
+			for(int t=0;t<100;t++)
+			{
+				int i = rnd.nextInt(3000);
+				int j = rnd.nextInt(3000);
+				assertEquals(naive(X, i, X, j), naive(E, i, E, j), 1e-6);
+			}
+		}
+
+		// 8 distinct datapoints, each repeated: MaxMin stops at 8 distinct landmarks
+		Matrix Y = new Matrix(40, 3);
+		for(int i=0;i<40;i++)
+			for(int k=0;k<3;k++)
+				Y.set(i, k, X.get(i%8, k));
+		LandmarkMDS lmds = new LandmarkMDS(Y, 20);
+		lmds.compute();
+		int[] lm = lmds.getLandmarks();
+		assertEquals(8, lm.length);
+		boolean[] seen = new boolean[8];
+		for(int l: lm)
+		{
+			assertEquals(false, seen[l%8]);
+			seen[l%8] = true;
+		}
+
+		try
+		{
+			new LandmarkMDS(new Matrix(10, 3, 1.0), 5).compute();
+			fail();
+		}
+		catch(IllegalStateException e)
+		{
+		}
+	}
+
+	public void testConcurrentEmbed() throws Exception
+	{
+		Random rnd = new Random(16);
+		Matrix X   = new Matrix(400, 5);
+		for(int i=0;i<400;i++)
+			for(int k=0;k<5;k++)
+				X.set(i, k, rnd.nextGaussian());
+		Matrix Xtrn = X.getMatrix(0, 199, 0, 4);
+		final Matrix D2t = MDS.computeSquaredDistanceMatrix(Xtrn, X.getMatrix(200, 399, 0, 4));
+		final MDS    mds = new MDS(MDS.computeSquaredDistanceMatrix(Xtrn));
+		mds.compute();
+
+		// projection is built lazily by whichever thread comes first
+		final Matrix[] res = new Matrix[8];
+		Thread[] threads = new Thread[res.length];
+		for(int t=0;t<res.length;t++)
+		{
+			final int id = t;
+			threads[t] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					res[id] = new Matrix(200, mds.getDim());
+					mds.embed(D2t, res[id]);
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t: threads)
+			t.join();
+
+		Matrix E   = mds.embed(D2t);
+		for(Matrix r: res)
+			assertEquals(true, new MMatrix(E).equalsEps(r, 0.0));
+
+		// distances computed on the fly from descriptors
+		assertEquals(true, new MMatrix(E).equalsEps(mds.embedDescriptors(Xtrn, X.getMatrix(200, 399, 0, 4)), 1e-9));
+	}
+
+	public void testSaveLoad() throws IOException
+	{
+		Matrix X    = MMatrix.load(this.getClass().getResource("/data/uk.dat").getFile());
+		int    n    = X.getRowDimension();
+		int    k    = X.getColumnDimension();
+		Matrix Xtrn = X.getMatrix(1,n-1,0,k-1);
+		Matrix D2t  = MDS.computeSquaredDistanceMatrix(Xtrn, X.getMatrix(0,0,0,k-1));
+		MDS mds = new MDS(MDS.computeSquaredDistanceMatrix(Xtrn));
+		mds.compute();
+		mds.save("/tmp/uk.mds");
+
+		MDS mds2 = MDS.load("/tmp/uk.mds");
+		assertEquals(mds.getDim(), mds2.getDim());
+		assertEquals(true, new MMatrix(mds.embed(D2t)).equalsEps(mds2.embed(D2t), 0.0));
+		assertEquals(true, new MMatrix(mds.getX()).equalsEps(mds2.getX(), 1e-9));
+		assertEquals(-154.64, mds2.embed(D2t).get(0,0), 1e-2);
+		assertEquals(true, new MMatrix(mds.embedGramian(D2t)).equalsEps(mds2.embedGramian(D2t), 0.0));
+		try
+		{
+			mds2.compute();
+			fail();
+		}
+		catch(IllegalStateException e)
+		{
+		}
+	}
+
+	public void testSaveLoadLarge() throws IOException
+	{
+		// squared distances of a planar point cloud, computed on the fly
+		final int        N = 9000;
+		final double[][] P = new double[N][2];
+		Random rnd = new Random(17);
+		for(int i=0;i<N;i++)
+		{
+			P[i][0] = 10.0*rnd.nextGaussian();
+			P[i][1] = rnd.nextGaussian();
+		}
+		RowMatrix D2 = new RowMatrix()
+		{
+			public int getRowDimension() { return N; }
+			public int getColumnDimension() { return N; }
+			public double get(int i, int j)
+			{
+				double a = P[i][0]-P[j][0], b = P[i][1]-P[j][1];
+				return a*a+b*b;
+			}
+			public void set(int i, int j, double d) { throw new UnsupportedOperationException(); }
+			public void getRow(int r, double[] row)
+			{
+				for(int j=0;j<N;j++)
+					row[j] = get(r,j);
+			}
+			public void setRow(int r, double[] row) { throw new UnsupportedOperationException(); }
+		};
+		MDS mds = new MDS(D2, 2);
+		mds.compute();
+		mds.save("/tmp/large.mds");
+
+		MDS    mds2 = MDS.load("/tmp/large.mds");
+		Matrix D2t  = new Matrix(3, N);
+		for(int j=0;j<N;j++)
+			for(int i=0;i<3;i++)
+				D2t.set(i, j, D2.get(i*100, j));
+		assertEquals(2, mds2.getDim());
+		assertEquals(true, new MMatrix(mds.getX()).equalsEps(mds2.getX(), 1e-9));
+		assertEquals(true, new MMatrix(mds.embed(D2t)).equalsEps(mds2.embed(D2t), 0.0));
+	}
+
+	public void testDistanceMetrics()
+	{
+		Random rnd = new Random(19);
+		Matrix F   = new Matrix(60, 150);
+		for(int i=0;i<60;i++)
+			for(int k=0;k<150;k++)
+				F.set(i, k, rnd.nextInt(4)==0 ? 1.0 : 0.0);
+		Fingerprint[] fps = Fingerprint.fromMatrix(F);
+		assertEquals(150, fps[0].size());
+		assertEquals(true, fps[3].get(7)==(F.get(3,7)==1.0));
+
+		// the words are copied in and out, the cached cardinality cannot go stale
+		long[]      w  = fps[3].getWords();
+		Fingerprint fp = new Fingerprint(150, w);
+		int         c  = fp.cardinality();
+		assertEquals(fps[3].cardinality(), c);
+		w[0] = ~w[0];
+		fp.getWords()[1] = ~w[1];
+		assertEquals(c, fp.cardinality());
+		assertEquals(c, fps[3].cardinality());
+		assertEquals(fps[3], fp);
+
+		Matrix D2 = MDS.computeSquaredDistanceMatrix(fps, DistanceMetrics.TANIMOTO);
+		PackedDistanceMatrix P = PairwiseDistances.squaredPacked(fps, DistanceMetrics.TANIMOTO);
+		assertEquals(true, new MMatrix(D2).equalsEps(P.toMMatrix(), 0.0));
+		// odd #rows, the middle row has no partner
+		Matrix D2o = MDS.computeSquaredDistanceMatrix(Arrays.copyOf(fps, 59), DistanceMetrics.TANIMOTO);
+		assertEquals(true, new MMatrix(D2.getMatrix(0, 58, 0, 58)).equalsEps(D2o, 0.0));
+		assertEquals(true, new MMatrix(D2o).equalsEps(PairwiseDistances.squaredPacked(Arrays.copyOf(fps, 59), DistanceMetrics.TANIMOTO).toMMatrix(), 0.0));
+		for(int i=0;i<60;i++)
+		{
+			assertEquals(0.0, D2.get(i,i), 0.0);
+			for(int j=0;j<60;j++)
+			{
+				int both = 0, any = 0;
+				for(int k=0;k<150;k++)
+				{
+					if(F.get(i,k)==1.0 && F.get(j,k)==1.0)
+						both++;
+					if(F.get(i,k)==1.0 || F.get(j,k)==1.0)
+						any++;
+				}
+				double d = 1.0-(double) both/any;
+				assertEquals(d*d, D2.get(i,j), 1e-12);
+			}
+		}
+		MDS mds = new MDS(D2);
+		mds.compute();
+		assertEquals(true, mds.getDim()>0);
+
+		double[][] A    = F.getArray();
+		Matrix     D2e  = MDS.computeSquaredDistanceMatrix(A, DistanceMetrics.EUCLIDEAN);
+		assertEquals(true, new MMatrix(D2e).equalsEps(PairwiseDistances.squared(F), 1e-9));
+		Matrix     D2t  = MDS.computeSquaredDistanceMatrix(A, new double[][]{ A[5] }, DistanceMetrics.MANHATTAN);
+		assertEquals(0.0, D2t.get(0,5), 0.0);
+		assertEquals(Math.pow(DistanceMetrics.MANHATTAN.distance(A[5], A[9]), 2), D2t.get(0,9), 0.0);
+		assertEquals(0.0, DistanceMetrics.COSINE.distance(new double[]{ 1, 2 }, new double[]{ 2, 4 }), 1e-12);
+		assertEquals(1.0, DistanceMetrics.COSINE.distance(new double[]{ 1, 0 }, new double[]{ 0, 3 }), 1e-12);
+	}
+
+	public void testSMACOF()
+	{
+		Random rnd = new Random(20);
+		Matrix F   = new Matrix(120, 64);
+		for(int i=0;i<120;i++)
+			for(int k=0;k<64;k++)
+				F.set(i, k, rnd.nextInt(3)==0 ? 1.0 : 0.0);
+		Matrix D2 = MDS.computeSquaredDistanceMatrix(Fingerprint.fromMatrix(F), DistanceMetrics.TANIMOTO);
+		MDS mds = new MDS(D2, 2);
+		mds.compute();
+
+		SMACOF smacof = new SMACOF(PackedDistanceMatrix.fromMatrix(D2), mds);
+		smacof.setMaxIterations(100);
+		smacof.compute();
+		double[] hist = smacof.getStressHistory();
+		assertEquals(smacof.getIterations()+1, hist.length);
+		assertEquals(true, smacof.getIterations()>0);
+		for(int i=1;i<hist.length;i++)
+			assertEquals(true, hist[i]<=hist[i-1]+1e-12);
+		assertEquals(true, smacof.getStress()<hist[0]);
+		assertEquals(120, smacof.getX().getRowDimension());
+		assertEquals(2, smacof.getX().getColumnDimension());
+
+		// normalized stress of the initial configuration
+		Matrix X0  = mds.getX();
+		double raw = 0.0, dsq = 0.0;
+		for(int i=0;i<120;i++)
+			for(int j=i+1;j<120;j++)
+			{
+				double delta = Math.sqrt(D2.get(i,j));
+				raw += Math.pow(delta-Math.sqrt(naive(X0, i, X0, j)), 2);
+				dsq += D2.get(i,j);
+			}
+		assertEquals(Math.sqrt(raw/dsq), hist[0], 1e-12);
+	}
+
+	private static double naive(Matrix A, int i, Matrix B, int j)
+	{
+		double s = 0.0;
+		for(int k=0;k<A.getColumnDimension();k++)
+		{
+			double d = A.get(i,k)-B.get(j,k);
+			s += d*d;
+		}
+		return s;
+	}
 }
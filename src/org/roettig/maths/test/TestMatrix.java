@@ -3,13 +3,38 @@
  */
 package org.roettig.maths.test;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.roettig.maths.matrix.ColumnApplicator;
 import org.roettig.maths.matrix.ColumnCenterer;
 import org.roettig.maths.matrix.ColumnScaler;
+import org.roettig.maths.matrix.ColumnStandardizer;
 import org.roettig.maths.matrix.DiagonalApplicator;
 import org.roettig.maths.matrix.ElementApplicator;
 import org.roettig.maths.matrix.ElementFunctor;
+import org.roettig.maths.matrix.ElementPipeline;
+import org.roettig.maths.matrix.Functors;
 import org.roettig.maths.matrix.MMatrix;
+import org.roettig.maths.matrix.NpyFile;
+import org.roettig.maths.matrix.OffHeapMatrix;
+import org.roettig.maths.matrix.ParallelColumnApplicator;
+import org.roettig.maths.matrix.ParallelElementApplicator;
+import org.roettig.maths.matrix.ParallelRowApplicator;
+import org.roettig.maths.matrix.RowApplicator;
+import org.roettig.maths.matrix.RowFunctor;
+import org.roettig.maths.matrix.TextMatrixReader;
+import org.roettig.maths.matrix.UnaryFunctor;
 import org.roettig.maths.mva.PCA;
+import org.roettig.maths.util.Parallel;
 import junit.framework.TestCase;
 
 /**
@@ -217,4 +242,399 @@ public class TestMatrix extends TestCase
 		System.out.println(Math.sqrt(pca.getDModX(14)/varE));
 		System.out.println(Math.sqrt(pca.getDModX(15)/varE));
 	}
+
+	public void testNpy() throws Exception
+	{
+		MMatrix foods = MMatrix.load(this.getClass().getResource("/data/foods.dat").getFile());
+		foods.set(0, 0, -1.0/3.0);
+		foods.saveNpy("/tmp/foods.npy");
+
+		NpyFile npy = NpyFile.open("/tmp/foods.npy");
+		assertEquals(16, npy.getRowDimension());
+		assertEquals(20, npy.getColumnDimension());
+		assertEquals(0, npy.getDataOffset()%64);
+
+		MMatrix X = MMatrix.loadNpy("/tmp/foods.npy");
+		assertEquals("npy roundtrip should be exact", true, foods.equalsEps(X, 0.0));
+
+		foods.saveNpy("/tmp/foods32.npy", true);
+		assertEquals(true, NpyFile.open("/tmp/foods32.npy").isSinglePrecision());
+		X = MMatrix.loadNpy("/tmp/foods32.npy");
+		assertEquals(-1.0/3.0, X.get(0,0), 1e-7);
+		assertEquals("float32 roundtrip should match", true, foods.equalsEps(X, 1e-5));
+	}
+
+	public void testTextReader() throws Exception
+	{
+		String[] vals = { "1", "-2.5", "+3.25e2", "0.000123", "9.300000000000001", "-72.90000000000001", "1E-5", "12345678901234567890", "-0", "NaN" };
+		Random rnd = new Random(7);
+		PrintWriter out = new PrintWriter("/tmp/reader.dat");
+		for(int r=0;r<500;r++)
+		{
+			for(int c=0;c<vals.length;c++)
+				out.print((c==0 ? "" : (r%2==0 ? " " : "\t  "))+vals[(r+c)%vals.length]);
+			out.print(r%3==0 ? "\r\n" : "\n");
+			if(r%50==0)
+				out.print("\n");
+		}
+		out.close();
+
+		long threshold = TextMatrixReader.PARALLEL_THRESHOLD;
+		try
+		{
+			for(long t: new long[]{Long.MAX_VALUE, 0})
+			{
+				TextMatrixReader.PARALLEL_THRESHOLD = t;
+				MMatrix X = MMatrix.load("/tmp/reader.dat");
+				assertEquals(500, X.getRowDimension());
+				assertEquals(vals.length, X.getColumnDimension());
+				for(int r=0;r<500;r++)
+				{
+					for(int c=0;c<vals.length;c++)
+						assertEquals(Double.parseDouble(vals[(r+c)%vals.length]), X.get(r,c), 0.0);
+				}
+			}
+		}
+		finally
+		{
+			TextMatrixReader.PARALLEL_THRESHOLD = threshold;
+		}
+
+		out = new PrintWriter("/tmp/reader.dat");
+		out.println("1 2 3");
+		out.println("4 5");
+		out.close();
+		try
+		{
+			MMatrix.load("/tmp/reader.dat");
+			fail("ragged rows should be rejected");
+		}
+		catch(IOException e)
+		{
+		}
+	}
+
+	public void testWriter() throws Exception
+	{
+		Random rnd = new Random(11);
+		MMatrix m = new MMatrix(40,25,0.0);
+		for(int i=0;i<40;i++)
+		{
+			for(int j=0;j<25;j++)
+			{
+				double d = (rnd.nextDouble()-0.5)*Math.pow(10, rnd.nextInt(16)-6);
+				if(j%5==0)
+					d = Math.round(d*2e6)/2e6;
+				m.set(i, j, d);
+			}
+		}
+		m.set(0, 0, -0.0);
+		m.set(0, 1, 5e-7);
+		m.set(0, 2, -1e-7);
+		m.set(0, 3, Double.NaN);
+		m.set(0, 4, Double.NEGATIVE_INFINITY);
+		m.set(0, 5, 999999.9999995);
+		m.set(0, 6, 123456.0000005);
+		m.set(0, 7, 1e300);
+
+		StringBuffer ref = new StringBuffer();
+		ref.append("[matrix]\n");
+		for(int i=0;i<m.getRowDimension();i++)
+		{
+			for(int j=0;j<m.getColumnDimension();j++)
+				ref.append(String.format(Locale.ENGLISH,"%+12.6f ",m.get(i,j)));
+			ref.append("\n");
+		}
+		ref.append("\n");
+		assertEquals(ref.toString(), m.toString());
+
+		m.set(0, 3, 0.0);
+		m.set(0, 4, 0.0);
+		m.set(0, 7, 0.0);
+		m.save("/tmp/writer.dat", true);
+		MMatrix x = MMatrix.load("/tmp/writer.dat");
+		assertEquals("gzip roundtrip should match", true, m.equalsEps(x, 1e-6));
+	}
+
+	public void testOffHeap() throws Exception
+	{
+		MMatrix foods = MMatrix.load(this.getClass().getResource("/data/foods.dat").getFile());
+		OffHeapMatrix X = OffHeapMatrix.fromMatrix(foods);
+		assertEquals(foods.get(3,7), X.get(3,7), 0.0);
+		assertEquals("off-heap roundtrip should be exact", true, foods.equalsEps(X.toMMatrix(), 0.0));
+
+		ElementApplicator sq = new ElementApplicator( new ElementFunctor()
+		{
+			@Override
+			public double calculate(int i, int j, double d)
+			{
+				return d*d;
+			}
+		});
+		sq.apply(X);
+		sq.apply(foods);
+		assertEquals(true, foods.equalsEps(X.toMMatrix(), 0.0));
+
+		foods.saveNpy("/tmp/foods.npy");
+		OffHeapMatrix Y = OffHeapMatrix.map(NpyFile.open("/tmp/foods.npy"));
+		assertEquals(true, foods.equalsEps(Y.toMMatrix(), 0.0));
+
+		PCA p1 = new PCA(foods,3,true);
+		PCA p2 = new PCA(Y,3,true);
+		assertEquals(p1.getEval(0), p2.getEval(0), 1e-8);
+	}
+
+	public void testStandardizer() throws Exception
+	{
+		MMatrix foods = MMatrix.load(this.getClass().getResource("/data/foods.dat").getFile());
+		MMatrix ref   = new MMatrix(foods);
+		ColumnCenterer.apply(ref);
+		ColumnScaler.apply(ref);
+
+		ColumnStandardizer st = new ColumnStandardizer(true).fit(foods);
+		MMatrix x = st.transform(foods);
+		assertEquals("fused standardization should match", true, ref.equalsEps(x, 1e-10));
+
+		// fitted parameters can be reused on new rows
+		ColumnStandardizer st2 = new ColumnStandardizer(st.getMeans(), st.getScales());
+		MMatrix row = new MMatrix(foods.getMatrix(4, 4, 0, 19));
+		st2.apply(row);
+		assertEquals(true, new MMatrix(x.getMatrix(4, 4, 0, 19)).equalsEps(row, 1e-12));
+
+		Random rnd = new Random(5);
+		MMatrix big = new MMatrix(5000, 7, 0.0);
+		for(int i=0;i<5000;i++)
+			for(int j=0;j<7;j++)
+				big.set(i, j, 100.0*j+rnd.nextGaussian()*(j+1));
+		MMatrix bigref = new MMatrix(big);
+		ColumnCenterer.apply(bigref);
+		new ColumnStandardizer(false).fit(big).apply(big);
+		assertEquals(true, bigref.equalsEps(big, 1e-9));
+	}
+
+	public void testParallelApplicators() throws Exception
+	{
+		ElementFunctor f = new ElementFunctor()
+		{
+			@Override
+			public double calculate(int i, int j, double d)
+			{
+				return d*d+i-2*j;
+			}
+		};
+		Random rnd = new Random(9);
+		MMatrix m = new MMatrix(300,200,0.0);
+		for(int i=0;i<300;i++)
+			for(int j=0;j<200;j++)
+				m.set(i, j, rnd.nextGaussian());
+
+		MMatrix ref = new MMatrix(m);
+		new ElementApplicator(f).apply(ref);
+		MMatrix x = new MMatrix(m);
+		new ParallelElementApplicator(f).apply(x);
+		assertEquals(true, ref.equalsEps(x, 0.0));
+
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try
+		{
+			x = new MMatrix(m);
+			ParallelColumnApplicator pc = new ParallelColumnApplicator(f, pool);
+			pc.setThreshold(0);
+			pc.apply(x);
+			assertEquals(true, ref.equalsEps(x, 0.0));
+
+			x = new MMatrix(m);
+			ParallelRowApplicator pr = new ParallelRowApplicator(f, pool);
+			pr.setThreshold(0);
+			pr.apply(x);
+			assertEquals(true, ref.equalsEps(x, 0.0));
+
+			x = new MMatrix(m);
+			MMatrix y = new MMatrix(m);
+			pc.apply(x, 7);
+			new ColumnApplicator(f).apply(y, 7);
+			pr.apply(x, 11);
+			new RowApplicator(f).apply(y, 11);
+			assertEquals(true, y.equalsEps(x, 0.0));
+
+			// row-wise stored matrices are split into row tiles on the executor as well
+			final Thread    caller = Thread.currentThread();
+			final boolean[] tiled = new boolean[1];
+			ElementFunctor g = new ElementFunctor()
+			{
+				@Override
+				public double calculate(int i, int j, double d)
+				{
+					if(Thread.currentThread()!=caller)
+						tiled[0] = true;
+					return d*d+i-2*j;
+				}
+			};
+			OffHeapMatrix o = OffHeapMatrix.fromMatrix(m);
+			pr = new ParallelRowApplicator(g, pool);
+			pr.setThreshold(0);
+			pr.apply(o);
+			assertEquals(true, ref.equalsEps(o.toMMatrix(), 0.0));
+			assertEquals(true, tiled[0]);
+
+			tiled[0] = false;
+			o  = OffHeapMatrix.fromMatrix(m);
+			pc = new ParallelColumnApplicator(g, pool);
+			pc.setThreshold(0);
+			pc.apply(o);
+			assertEquals(true, ref.equalsEps(o.toMMatrix(), 0.0));
+			assertEquals(true, tiled[0]);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	public void testNestedParallel() throws Exception
+	{
+		// nested loops on a bounded executor run the inner loop on the tile's thread
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		final AtomicInteger   sum  = new AtomicInteger();
+		try
+		{
+			pool.submit(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					Parallel.forRange(pool, 0, 8, 1, new Parallel.Range()
+					{
+						@Override
+						public void apply(int from, int to)
+						{
+							Parallel.forRange(pool, 0, 100, 10, new Parallel.Range()
+							{
+								@Override
+								public void apply(int from, int to)
+								{
+									sum.addAndGet(to-from);
+								}
+							});
+						}
+					});
+				}
+			}).get(60, TimeUnit.SECONDS);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		assertEquals(800, sum.get());
+
+		// a loop on another ForkJoinPool runs on that pool, also from a common pool task
+		final ForkJoinPool  fj    = new ForkJoinPool(2);
+		final AtomicInteger other = new AtomicInteger();
+		Parallel.forRange(0, 4, 1, new Parallel.Range()
+		{
+			@Override
+			public void apply(int from, int to)
+			{
+				Parallel.forRange(fj, 0, 64, 4, new Parallel.Range()
+				{
+					@Override
+					public void apply(int from, int to)
+					{
+						if(ForkJoinTask.getPool()!=fj)
+							other.incrementAndGet();
+					}
+				});
+			}
+		});
+		fj.shutdown();
+		assertEquals(0, other.get());
+	}
+
+	public void testFunctors() throws Exception
+	{
+		Random  rnd = new Random(9);
+		MMatrix m   = new MMatrix(120, 90);
+		for(int i=0;i<120;i++)
+			for(int j=0;j<90;j++)
+				m.set(i, j, rnd.nextDouble()*10);
+
+		MMatrix ref = new MMatrix(m);
+		new ElementApplicator(new ElementFunctor()
+		{
+			@Override
+			public double calculate(int i, int j, double d)
+			{
+				return Math.sqrt(d)*2.0+1.0;
+			}
+		}).apply(ref);
+
+		MMatrix x = new MMatrix(m);
+		ParallelElementApplicator pe = new ParallelElementApplicator(Functors.SQRT);
+		pe.setThreshold(0);
+		pe.apply(x);
+		new ColumnApplicator(Functors.scale(2.0)).apply(x);
+		new RowApplicator(Functors.shift(1.0)).apply(x);
+		assertEquals(true, ref.equalsEps(x, 0.0));
+
+		x = new MMatrix(m);
+		new ElementApplicator(new RowFunctor()
+		{
+			@Override
+			public void calculate(int r, double[] row)
+			{
+				for(int c=0;c<row.length;c++)
+					row[c] = Math.sqrt(row[c])*2.0+1.0;
+			}
+		}).apply(x);
+		assertEquals(true, ref.equalsEps(x, 0.0));
+
+		OffHeapMatrix oh = OffHeapMatrix.fromMatrix(m);
+		new ElementApplicator(UnaryFunctor.of(Math::sqrt)).apply(oh);
+		new ElementApplicator(Functors.SQRT).apply(m);
+		assertEquals(true, m.equalsEps(oh.toMMatrix(), 0.0));
+	}
+
+	public void testPipeline() throws Exception
+	{
+		Random  rnd = new Random(10);
+		MMatrix m   = new MMatrix(300, 1500);
+		for(int i=0;i<300;i++)
+			for(int j=0;j<1500;j++)
+				m.set(i, j, rnd.nextDouble()*4);
+		ElementFunctor idx = new ElementFunctor()
+		{
+			@Override
+			public double calculate(int i, int j, double d)
+			{
+				return d+i-j;
+			}
+		};
+
+		MMatrix ref = new MMatrix(m);
+		new ElementApplicator(Functors.SQRT).apply(ref);
+		new ElementApplicator(idx).apply(ref);
+		new ElementApplicator(Functors.scale(0.5)).apply(ref);
+
+		ElementPipeline p = m.map(Functors.SQRT).map(idx).scale(0.5);
+		assertEquals(3, p.size());
+		MMatrix y = p.toMatrix();
+		assertEquals(true, ref.equalsEps(y, 0.0));
+		assertEquals(false, ref.equalsEps(m, 1e-3));
+
+		MMatrix z = new MMatrix(300, 1500);
+		p.parallel().into(z);
+		assertEquals(true, ref.equalsEps(z, 0.0));
+
+		p.parallel().applyInPlace();
+		assertEquals(true, ref.equalsEps(m, 0.0));
+
+		try
+		{
+			new ElementPipeline().square().toMatrix();
+			fail();
+		}
+		catch(IllegalStateException e)
+		{
+		}
+	}
 }
@@ -0,0 +1,315 @@
+/**
+ *
+ */
+package org.roettig.maths.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.roettig.maths.matrix.CrossProducts;
+import org.roettig.maths.matrix.MMatrix;
+import org.roettig.maths.matrix.NpyFile;
+import org.roettig.maths.matrix.OffHeapMatrix;
+import org.roettig.maths.mva.IncrementalPCA;
+import org.roettig.maths.mva.OutOfCorePCA;
+import org.roettig.maths.mva.PCA;
+
+import Jama.Matrix;
+import junit.framework.TestCase;
+
+/**
+ * @author roettig
+ *
+ */
+public class TestPCA extends TestCase
+{
+	public void testCrossProducts()
+	{
+		Matrix X = random(150, 130, 1);
+		Matrix C = CrossProducts.transposeTimes(X);
+		Matrix G = CrossProducts.timesTranspose(X);
+		assertEquals(0.0, C.minus(X.transpose().times(X)).normInf(), 1e-10);
+		assertEquals(0.0, G.minus(X.times(X.transpose())).normInf(), 1e-10);
+		assertEquals(C.get(3,100), C.get(100,3), 0.0);
+		assertEquals(G.get(140,7), G.get(7,140), 0.0);
+
+		// tall matrix, the summation is split into chunks
+		Matrix T = random(5000, 7, 2);
+		assertEquals(0.0, CrossProducts.transposeTimes(T).minus(T.transpose().times(T)).normInf(), 1e-9);
+	}
+
+	public void testSolvers()
+	{
+		// tall: N >> p
+		MMatrix X = new MMatrix(random(400, 12, 3));
+		PCA svd = new PCA(X, 3, true, PCA.Solver.SVD);
+		PCA auto = new PCA(X, 3, true);
+		assertEquals(PCA.Solver.SVD, svd.getSolver());
+		assertEquals(PCA.Solver.COVARIANCE, auto.getSolver());
+		same(svd, auto, 12);
+
+		// wide: p >> N
+		MMatrix Y = new MMatrix(random(15, 200, 4));
+		svd  = new PCA(Y, 3, false, PCA.Solver.SVD);
+		auto = new PCA(Y, 3, false);
+		assertEquals(PCA.Solver.GRAM, auto.getSolver());
+		same(svd, auto, 14);
+
+		// the foods data keeps the full SVD
+		assertEquals(PCA.Solver.SVD, new PCA(new MMatrix(random(16, 20, 5)), 3, true).getSolver());
+	}
+
+	public void testRandomized()
+	{
+		// rank 5 plus noise
+		Random rnd = new Random(6);
+		Matrix A   = random(600, 5, 7);
+		Matrix B   = random(5, 90, 8);
+		Matrix X   = A.times(B);
+		for(int i=0;i<X.getRowDimension();i++)
+			for(int j=0;j<X.getColumnDimension();j++)
+				X.set(i, j, X.get(i,j)+0.01*rnd.nextGaussian());
+
+		PCA svd = new PCA(new MMatrix(X), 3, false, PCA.Solver.SVD);
+		PCA rnd1 = new PCA(new MMatrix(X), 3, false, 10, 2, 4711);
+		assertEquals(PCA.Solver.RANDOMIZED, rnd1.getSolver());
+		same(svd, rnd1, 5);
+
+		// only ncomp+oversampling eigenvalues are known
+		rnd1.getEval(12);
+		rnd1.getGoodnessOfFit(13);
+		try
+		{
+			rnd1.getEval(13);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+		try
+		{
+			rnd1.getGoodnessOfFit(14);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+
+		// without power iterations the leading components are still close
+		PCA rnd2 = new PCA(new MMatrix(X), 3, false, 5, 0, 13);
+		for(int k=0;k<3;k++)
+			assertEquals(svd.getEval(k), rnd2.getEval(k), 1e-3*svd.getEval(k));
+
+		try
+		{
+			new PCA(new MMatrix(X), 3, false, -1, 0, 13);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+
+		// more components than min(N,p), on every route
+		for(PCA.Solver s: PCA.Solver.values())
+		{
+			try
+			{
+				new PCA(new MMatrix(random(6, 40, 17)), 7, false, s);
+				fail();
+			}
+			catch(IllegalArgumentException e)
+			{
+			}
+		}
+		try
+		{
+			new PCA(new MMatrix(random(50, 4, 18)), 5, false, 10, 2, 13);
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+
+	public void testIncremental()
+	{
+		Matrix X = random(500, 8, 9);
+		for(int i=0;i<X.getRowDimension();i++)
+			X.set(i, 2, X.get(i,2)+5.0);
+
+		// all components: same as the batch PCA
+		PCA            pca  = new PCA(new MMatrix(X), 8, true, PCA.Solver.SVD);
+		IncrementalPCA ipca = new IncrementalPCA(8, true);
+		for(int r=0;r<500;r+=60)
+			ipca.partialFit(X.getMatrix(r, Math.min(500, r+60)-1, 0, 7));
+		assertEquals(500, ipca.getNumberOfSamples());
+		assertEquals(0.0, pca.getStandardizer().getMeans()[2]-ipca.getStandardizer().getMeans()[2], 1e-12);
+		for(int k=0;k<8;k++)
+			assertEquals(pca.getEval(k), ipca.getEval(k), 1e-8*pca.getEval(0));
+		assertEquals(pca.getGoodnessOfFit(3), ipca.getGoodnessOfFit(3), 1e-10);
+		Matrix T = ipca.getScores(X);
+		for(int c=0;c<8;c++)
+		{
+			double s = sign(pca.getLoadings(), ipca.getLoadings(), c);
+			for(int j=0;j<8;j++)
+				assertEquals(pca.getLoadings().get(j,c), s*ipca.getLoadings().get(j,c), 1e-8);
+			for(int i=0;i<500;i++)
+				assertEquals(pca.getScores().get(i,c), s*T.get(i,c), 1e-8);
+		}
+
+		// rank 3 plus noise: 3 components of centered data summarize everything seen
+		Random rnd = new Random(10);
+		Matrix Y   = random(400, 3, 11).times(random(3, 30, 12));
+		for(int i=0;i<400;i++)
+			for(int j=0;j<30;j++)
+				Y.set(i, j, Y.get(i,j)+0.001*rnd.nextGaussian());
+		pca  = new PCA(new MMatrix(Y), 3, false);
+		ipca = new IncrementalPCA(3, false);
+		for(int r=0;r<400;r+=25)
+			ipca.partialFit(Y.getMatrix(r, r+24, 0, 29));
+		for(int k=0;k<3;k++)
+			assertEquals(pca.getEval(k), ipca.getEval(k), 1e-4*pca.getEval(k));
+
+		try
+		{
+			new IncrementalPCA(3, false).partialFit(Y.getMatrix(0, 1, 0, 29));
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+
+	public void testOutOfCore() throws IOException
+	{
+		Matrix X = random(3000, 12, 13);
+		for(int i=0;i<X.getRowDimension();i++)
+			X.set(i, 4, 3.0*X.get(i,4)+100.0);
+		NpyFile.write(X, "/tmp/ooc.npy", false);
+
+		PCA          pca = new PCA(new MMatrix(X), 3, true, PCA.Solver.SVD);
+		OutOfCorePCA ooc = new OutOfCorePCA("/tmp/ooc.npy", 3, true);
+		ooc.compute();
+		for(int k=0;k<12;k++)
+			assertEquals(pca.getEval(k), ooc.getEval(k), 1e-8*pca.getEval(0));
+		assertEquals(pca.getGoodnessOfFit(2), ooc.getGoodnessOfFit(2), 1e-10);
+		assertEquals(pca.getStandardizer().getScales()[4], ooc.getStandardizer().getScales()[4], 1e-10);
+
+		OffHeapMatrix T  = ooc.writeScores("/tmp/ooc_scores.npy");
+		MMatrix       T2 = NpyFile.open("/tmp/ooc_scores.npy").read();
+		assertEquals(true, T2.equalsEps(T.toMMatrix(), 0.0));
+		for(int c=0;c<3;c++)
+		{
+			double s = sign(pca.getLoadings(), ooc.getLoadings(), c);
+			for(int j=0;j<12;j++)
+				assertEquals(pca.getLoadings().get(j,c), s*ooc.getLoadings().get(j,c), 1e-8);
+			for(int i=0;i<3000;i++)
+				assertEquals(pca.getScores().get(i,c), s*T2.get(i,c), 1e-8);
+		}
+	}
+
+	public void testTransform() throws Exception
+	{
+		final Matrix X   = random(200, 10, 14);
+		final PCA    pca = new PCA(new MMatrix(X), 3, true);
+
+		// training datapoints reproduce scores and DModX
+		PCA.Projection pr = pca.transform(X);
+		assertEquals(0.0, pr.getScores().minus(pca.getScores()).normInf(), 1e-10);
+		double t2 = 0.0;
+		for(int i=0;i<200;i++)
+		{
+			assertEquals(pca.getDModX(i), pr.getDModX(i), 1e-10);
+			t2 += pr.getT2(i);
+		}
+		// scores have variance eval/(N-1), so the mean T^2 is ncomp*(N-1)/N
+		assertEquals(3.0*199/200, t2/200, 1e-10);
+
+		// a datapoint off the model plane has a larger distance
+		Matrix x = X.getMatrix(0, 0, 0, 9);
+		x.set(0, 9, x.get(0,9)+50.0);
+		assertTrue(pca.transform(x).getDModX(0)>pr.getDModX(0));
+
+		// concurrent scoring
+		final Matrix Y = random(500, 10, 15);
+		final Matrix T = pca.transform(Y).getScores();
+		ExecutorService exec = Executors.newFixedThreadPool(4);
+		List<Future<Matrix>> res = new ArrayList<Future<Matrix>>();
+		for(int t=0;t<8;t++)
+		{
+			res.add(exec.submit(new Callable<Matrix>()
+			{
+				@Override
+				public Matrix call()
+				{
+					return pca.transform(Y).getScores();
+				}
+			}));
+		}
+		for(Future<Matrix> f: res)
+			assertEquals(0.0, f.get().minus(T).normInf(), 0.0);
+		exec.shutdown();
+
+		try
+		{
+			pca.transform(random(5, 9, 16));
+			fail();
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+
+	/**
+	 * compares eigenvalues, scores and loadings up to the signs of the components.
+	 */
+	private static void same(PCA a, PCA b, int nevals)
+	{
+		for(int k=0;k<nevals;k++)
+			assertEquals(a.getEval(k), b.getEval(k), 1e-8*a.getEval(0));
+		assertEquals(a.getGoodnessOfFit(2), b.getGoodnessOfFit(2), 1e-10);
+		Matrix Ta = a.getScores(),   Tb = b.getScores();
+		Matrix Va = a.getLoadings(), Vb = b.getLoadings();
+		for(int c=0;c<3;c++)
+		{
+			double s = sign(Va, Vb, c);
+			for(int i=0;i<Va.getRowDimension();i++)
+				assertEquals(Va.get(i,c), s*Vb.get(i,c), 1e-8);
+			for(int i=0;i<Ta.getRowDimension();i++)
+				assertEquals(Ta.get(i,c), s*Tb.get(i,c), 1e-8*Math.sqrt(a.getEval(0)));
+		}
+		for(int i=0;i<Ta.getRowDimension();i++)
+			assertEquals(a.getDModX(i), b.getDModX(i), 1e-8);
+		assertEquals(a.getVarE(), b.getVarE(), 1e-8);
+	}
+
+	/**
+	 * sign aligning column c of B with column c of A.
+	 */
+	private static double sign(Matrix A, Matrix B, int c)
+	{
+		double s = 0.0;
+		for(int i=0;i<A.getRowDimension();i++)
+			s += A.get(i,c)*B.get(i,c);
+		return s<0.0 ? -1.0 : 1.0;
+	}
+
+	/**
+	 * random matrix with decaying column scales, so the components are well separated.
+	 */
+	private static Matrix random(int n, int m, long seed)
+	{
+		Random rnd = new Random(seed);
+		Matrix X   = new Matrix(n, m);
+		for(int i=0;i<n;i++)
+			for(int j=0;j<m;j++)
+				X.set(i, j, rnd.nextGaussian()*(1.0+2.0*(m-j))/m);
+		return X;
+	}
+}
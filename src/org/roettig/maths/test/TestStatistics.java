@@ -5,9 +5,11 @@ package org.roettig.maths.test;
 
 
 import java.util.List;
+import java.util.Random;
 import java.util.Vector;
 import org.roettig.maths.statistics.Statistics;
 import org.roettig.maths.statistics.Statistics.ConfusionMatrix;
+import org.roettig.maths.util.DoubleView;
 import junit.framework.TestCase;
 
 /**
@@ -387,4 +389,36 @@ public class TestStatistics extends TestCase
 
 		
 	}
+
+	public void testMoments() throws Exception
+	{
+		double[] v = { 1.0, 2.0, 3.0, 4.0 };
+		assertEquals( "mean([1,2,3,4]) should be 2.5", 2.5, Statistics.mean(v), 1e-12);
+		assertEquals( "var([1,2,3,4]) should be 1.6666666666666667", 1.6666666666666667, Statistics.var(v), 1e-12);
+		assertEquals( "std([1,2,3,4]) should be 1.2909944487358056", 1.2909944487358056, Statistics.std(DoubleView.of(v)), 1e-12);
+
+		Random rnd = new Random(3);
+		double[] w = new double[1000003];
+		double   s = 0.0;
+		for(int i=0;i<w.length;i++)
+		{
+			w[i] = 1e6+rnd.nextGaussian();
+			s += w[i];
+		}
+		double mn = s/w.length;
+		double ss = 0.0;
+		for(int i=0;i<w.length;i++)
+			ss += (w[i]-mn)*(w[i]-mn);
+		double var = ss/(w.length-1);
+
+		assertEquals(var, Statistics.var(w), 1e-9);
+		assertEquals(var, Statistics.var(w, true), 1e-9);
+		assertEquals(mn, Statistics.mean(w, true), 1e-6);
+
+		Statistics.Moments m1 = Statistics.moments(w, 0, 1000);
+		Statistics.Moments m2 = Statistics.moments(w, 1000, w.length);
+		m1.merge(m2);
+		assertEquals(w.length, m1.getN());
+		assertEquals(var, m1.getVar(), 1e-9);
+	}
 }
@@ -0,0 +1,138 @@
+/**
+ * 
+ */
+package org.roettig.maths.util;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * 
+ * DoubleView is a read-only, indexable view on a sequence of doubles stored elsewhere
+ * (e.g. a matrix column or a strided section of an array).
+ * 
+ * Elements are read in place, iterating a view neither copies the sequence nor boxes
+ * its elements unless the Iterable&lt;Double&gt; interface is used.
+ * 
+ * @author roettig
+ *
+ */
+public abstract class DoubleView implements Iterable<Double>
+{
+	/** 
+	 * get number of elements.   
+	 * 
+	 * @return number of elements
+	 */
+	public abstract int size();
+
+	/** 
+	 * get k-th element.   
+	 * 
+	 * @param k : index (0 &lt;= k &lt; size())
+	 * 
+	 * @return value of k-th element
+	 */
+	public abstract double get(int k);
+
+	/**
+	 * yields primitive iterator over all elements.
+	 */
+	@Override
+	public PrimitiveIterator.OfDouble iterator()
+	{
+		final int n = size();
+		return new PrimitiveIterator.OfDouble()
+		{
+			private int k = 0;
+
+			@Override
+			public boolean hasNext()
+			{
+				return k<n;
+			}
+
+			@Override
+			public double nextDouble()
+			{
+				if(k>=n)
+					throw new NoSuchElementException();
+				return get(k++);
+			}
+		};
+	}
+
+	/**
+	 * yields DoubleStream over all elements (splits well for parallel streams).
+	 * 
+	 * @return stream
+	 */
+	public DoubleStream stream()
+	{
+		return IntStream.range(0, size()).mapToDouble(new IntToDoubleFunction()
+		{
+			@Override
+			public double applyAsDouble(int k)
+			{
+				return get(k);
+			}
+		});
+	}
+
+	/**
+	 * copies all elements into a new array.
+	 * 
+	 * @return array with elements
+	 */
+	public double[] toArray()
+	{
+		int      n   = size();
+		double[] ret = new double[n];
+		for(int k=0;k<n;k++)
+			ret[k] = get(k);
+		return ret;
+	}
+
+	/**
+	 * yields strided view on an array: a[offset], a[offset+stride], ... (n elements).
+	 * 
+	 * @param a : array
+	 * @param offset : index of first element
+	 * @param stride : distance between elements
+	 * @param n : number of elements
+	 * 
+	 * @return view
+	 */
+	public static DoubleView of(final double[] a, final int offset, final int stride, final int n)
+	{
+		return new DoubleView()
+		{
+			@Override
+			public int size()
+			{
+				return n;
+			}
+
+			@Override
+			public double get(int k)
+			{
+				return a[offset+k*stride];
+			}
+		};
+	}
+
+	/**
+	 * yields view on all elements of an array.
+	 * 
+	 * @param a : array
+	 * 
+	 * @return view
+	 */
+	public static DoubleView of(double[] a)
+	{
+		return of(a, 0, 1, a.length);
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ *
+ */
+package org.roettig.maths.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *
+ * Parallel splits index ranges into tiles and runs them on a ForkJoinPool or an Executor.
+ *
+ * <pre>
+ * {@code
+ * Parallel.forRange(0, N, 64, new Parallel.Range()
+ * {
+ *     public void apply(int from, int to)
+ *     {
+ *         for(int i=from;i<to;i++)
+ *             ...
+ *     }
+ * });
+ * }
+ * </pre>
+ *
+ * Ranges not larger than the grain size are executed directly on the calling thread. A nested loop
+ * started from a task of the same ForkJoinPool is split on the calling worker. A nested loop on a
+ * plain Executor started from one of its own tiles runs sequentially, since a bounded Executor
+ * could otherwise deadlock with all its threads waiting for tiles that cannot be scheduled.
+ *
+ * @author roettig
+ *
+ */
+public class Parallel
+{
+	/**
+	 * The Range interface is the body of a parallel loop over [from,to).
+	 */
+	public interface Range
+	{
+		/**
+		 *
+		 * @param from : first index (inclusive)
+		 * @param to : last index (exclusive)
+		 */
+		void apply(int from, int to);
+	}
+
+	/**
+	 * plain executor whose tile the current thread is running, if any.
+	 */
+	private static final ThreadLocal<Executor> TILE_OF = new ThreadLocal<Executor>();
+
+	/**
+	 * get number of worker threads of the default pool.
+	 *
+	 * @return parallelism
+	 */
+	public static int getParallelism()
+	{
+		return ForkJoinPool.getCommonPoolParallelism();
+	}
+
+	/**
+	 * computes a grain size splitting n indices into a few tiles per worker thread.
+	 *
+	 * @param n : number of indices
+	 * @param min : minimal grain size
+	 *
+	 * @return grain size
+	 */
+	public static int grain(int n, int min)
+	{
+		return Math.max(Math.max(1,min), n/(4*getParallelism()));
+	}
+
+	/**
+	 * runs body on tiles of [from,to) with at most grain indices on the common ForkJoinPool.
+	 *
+	 * @param from : first index (inclusive)
+	 * @param to : last index (exclusive)
+	 * @param grain : maximal tile size
+	 * @param body : loop body
+	 */
+	public static void forRange(int from, int to, int grain, Range body)
+	{
+		forRange(ForkJoinPool.commonPool(), from, to, grain, body);
+	}
+
+	/**
+	 * runs body on tiles of [from,to) with at most grain indices on the given executor.
+	 *
+	 * @param exec : executor (a ForkJoinPool is used for recursive splitting)
+	 * @param from : first index (inclusive)
+	 * @param to : last index (exclusive)
+	 * @param grain : maximal tile size
+	 * @param body : loop body
+	 */
+	public static void forRange(Executor exec, int from, int to, int grain, Range body)
+	{
+		grain = Math.max(1, grain);
+		if(to-from<=grain)
+		{
+			if(to>from)
+				body.apply(from, to);
+			return;
+		}
+		if(exec instanceof ForkJoinPool)
+		{
+			RangeTask task = new RangeTask(from, to, grain, body);
+			if(ForkJoinTask.getPool()==exec)
+				task.invoke();
+			else
+				((ForkJoinPool) exec).invoke(task);
+			return;
+		}
+		if(TILE_OF.get()==exec)
+		{
+			body.apply(from, to);
+			return;
+		}
+
+		final Executor                     ex    = exec;
+		int ntiles = (to-from+grain-1)/grain;
+		final CountDownLatch               done  = new CountDownLatch(ntiles);
+		final AtomicReference<Throwable>   error = new AtomicReference<Throwable>();
+		for(int t=from;t<to;t+=grain)
+		{
+			final int lo = t;
+			final int hi = Math.min(to, t+grain);
+			final Range b = body;
+			exec.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					Executor outer = TILE_OF.get();
+					TILE_OF.set(ex);
+					try
+					{
+						if(error.get()==null)
+							b.apply(lo, hi);
+					}
+					catch(Throwable e)
+					{
+						error.compareAndSet(null, e);
+					}
+					finally
+					{
+						TILE_OF.set(outer);
+						done.countDown();
+					}
+				}
+			});
+		}
+		try
+		{
+			done.await();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while waiting for parallel tiles", e);
+		}
+		Throwable e = error.get();
+		if(e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if(e instanceof Error)
+			throw (Error) e;
+		if(e!=null)
+			throw new RuntimeException(e);
+	}
+
+	private static class RangeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private int   from;
+		private int   to;
+		private int   grain;
+		private Range body;
+
+		RangeTask(int from, int to, int grain, Range body)
+		{
+			this.from  = from;
+			this.to    = to;
+			this.grain = grain;
+			this.body  = body;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to-from<=grain)
+			{
+				body.apply(from, to);
+				return;
+			}
+			int mid = from + (to-from)/2;
+			invokeAll(new RangeTask(from, mid, grain, body), new RangeTask(mid, to, grain, body));
+		}
+	}
+}